@@ -0,0 +1,104 @@
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Baseline for the availability engine: reading the registries, deciding booking requests, generating schedules,
+ * creating the free-slots of a day and finding the nearest offices with a free slot, at each SyntheticData.Scale.
+ * Optional arguments: the scales to run, e.g. java AvailabilityEngineBenchmark SMALL MEDIUM, by default all of them.
+ * The HUGE scale needs a heap of about 3 GB.
+ */
+public class AvailabilityEngineBenchmark {
+    private static final int REQUESTS = 10000; // Booking requests decided per round
+
+    public static void main(String[] args) throws Exception {
+        List<SyntheticData.Scale> scales = new ArrayList<>();
+        for (String arg : args) {
+            scales.add(SyntheticData.Scale.valueOf(arg));
+        }
+        if (scales.isEmpty()) {
+            for (SyntheticData.Scale scale : SyntheticData.Scale.values()) {
+                scales.add(scale);
+            }
+        }
+
+        for (SyntheticData.Scale scale : scales) {
+            run(scale);
+        }
+    }
+
+    private static void run(SyntheticData.Scale scale) throws Exception {
+        SyntheticData data = new SyntheticData(18);
+        MqttMessage dentists = SyntheticData.message(data.dentistRegistry(scale.getOffices()));
+        MqttMessage bookings = SyntheticData.message(
+                data.bookingRegistry(scale.getBookings(), scale.getOffices(), SyntheticData.DAYS));
+
+        Filter filter = new Filter();
+        filter.makeDentistArray(dentists);
+        filter.makeBookingArray(bookings);
+
+        ReceivedBooking[] requests = new ReceivedBooking[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            requests[i] = filter.makeReceivedBooking(SyntheticData.message(
+                    data.bookingRequest(i, i % 100000, scale.getOffices(), SyntheticData.DAYS)));
+        }
+        LocalDate day = SyntheticData.FIRST_DAY;
+        SelectedDates selectedDates = new SelectedDates(day, day);
+
+        System.out.println(scale);
+        // Reading a registry takes long at the larger scales, so it is measured in fewer rounds
+        BenchmarkRunner registryRunner = new BenchmarkRunner(2, 5);
+        registryRunner.run("  makeDentistArray", 1, () -> {
+            try {
+                filter.makeDentistArray(dentists);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return filter.getRegistries().getDentists().size();
+        });
+        registryRunner.run("  makeBookingArray", 1, () -> {
+            try {
+                filter.makeBookingArray(bookings);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return filter.getRegistries().getBookings().size();
+        });
+
+        List<Dentist> dentistRegistry = filter.getRegistries().getDentists();
+        OccupancyIndex occupancy = filter.getRegistries().getOccupancy();
+        BenchmarkRunner runner = new BenchmarkRunner(10, 30);
+        int[] round = {0};
+        runner.run("  checkAvailability", REQUESTS, () -> {
+            // A new user id every round, so the requests are decided again instead of answered from the decision cache
+            round[0]++;
+            long accepted = 0;
+            for (int i = 0; i < REQUESTS; i++) {
+                ReceivedBooking request = requests[i];
+                request.setUserid(round[0] * REQUESTS + i);
+                if (filter.checkAvailability(request).getEpochMinute() != BookingTime.NONE) {
+                    accepted++;
+                }
+            }
+            return accepted;
+        });
+        runner.run("  Schedule generation, per office", dentistRegistry.size(), () -> {
+            long freeChairs = 0;
+            for (Dentist dentist : dentistRegistry) {
+                Schedule schedule = new Schedule(dentist, day);
+                schedule.setUnavailableTimeSlots(occupancy);
+                freeChairs += schedule.getSlotGrid().countFreeChairs();
+            }
+            return freeChairs;
+        });
+        runner.run("  getAvailability, one day", 1, () -> filter.getAvailability(selectedDates).size());
+        runner.run("  free-slots JSON, one day", 1,
+                () -> JsonWriter.forThread().freeSlots(filter.getAvailability(selectedDates)).length);
+        // The synthetic offices are spread over Gothenburg, this point is in the middle
+        NearestOffices nearestOffices = new NearestOffices(57.7, 11.95, day, 5);
+        runner.run("  getNearestAvailability, 5 offices", 1,
+                () -> filter.getNearestAvailability(nearestOffices).size());
+    }
+}
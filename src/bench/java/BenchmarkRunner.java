@@ -0,0 +1,41 @@
+import java.util.function.LongSupplier;
+
+/**
+ * BenchmarkRunner times a piece of work with a number of warm-up rounds followed by measured rounds.
+ * It is a small stand-in for JMH, which does not accept benchmark classes in the default package.
+ */
+public class BenchmarkRunner {
+    private final int warmupRounds;
+    private final int measuredRounds;
+
+    // Results are added here so the JIT cannot remove the measured work
+    private static volatile long blackhole;
+
+    public BenchmarkRunner(int warmupRounds, int measuredRounds) {
+        this.warmupRounds = warmupRounds;
+        this.measuredRounds = measuredRounds;
+    }
+
+    /**
+     * Runs the work and prints the average time per operation.
+     * @param name name printed next to the result
+     * @param operationsPerRound how many operations the work performs each time it is called
+     * @param work the work to measure, returning any value derived from its result
+     * @return average time per operation in nanoseconds
+     */
+    public double run(String name, long operationsPerRound, LongSupplier work) {
+        for (int i = 0; i < warmupRounds; i++) {
+            blackhole += work.getAsLong();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < measuredRounds; i++) {
+            blackhole += work.getAsLong();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        double nanosPerOperation = (double) elapsed / measuredRounds / operationsPerRound;
+        System.out.printf("%-50s %14.1f ns/op%n", name, nanosPerOperation);
+        return nanosPerOperation;
+    }
+}
@@ -0,0 +1,417 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * EmbeddedBroker is a small in-process stand-in for Mosquitto, so the component can be measured without any other
+ * process running. It speaks enough of MQTT 3.1.1 for the Paho client: CONNECT, SUBSCRIBE, UNSUBSCRIBE, PUBLISH with
+ * QoS 0 and 1, PUBACK, PINGREQ and DISCONNECT, along with the + and # wildcards, retained messages and last wills.
+ * There is no session state and no QoS 2.
+ *
+ * It can also run on its own, so several component processes can share it, e.g. to try a Cluster:
+ * java EmbeddedBroker 1883
+ */
+public class EmbeddedBroker implements AutoCloseable {
+    private static final int CONNECT = 1;
+    private static final int CONNACK = 2;
+    private static final int PUBLISH = 3;
+    private static final int PUBACK = 4;
+    private static final int SUBSCRIBE = 8;
+    private static final int SUBACK = 9;
+    private static final int UNSUBSCRIBE = 10;
+    private static final int UNSUBACK = 11;
+    private static final int PINGREQ = 12;
+    private static final int PINGRESP = 13;
+    private static final int DISCONNECT = 14;
+
+    private final ServerSocket serverSocket;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final Map<String, Message> retained = new ConcurrentHashMap<>();
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    /**
+     * Starts the broker on a free port of the loopback interface.
+     * @throws IOException thrown when no port can be opened
+     */
+    public EmbeddedBroker() throws IOException {
+        this(0);
+    }
+
+    /**
+     * Starts the broker on the loopback interface.
+     * @param port port to listen on, 0 picks a free one
+     * @throws IOException thrown when the port cannot be opened
+     */
+    public EmbeddedBroker(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(this::accept, "broker-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Runs the broker until the process is stopped.
+     * @param args the port, 1883 by default
+     * @throws Exception thrown when the broker cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        EmbeddedBroker broker = new EmbeddedBroker(args.length > 0 ? Integer.parseInt(args[0]) : 1883);
+        System.out.println("Broker listening on " + broker.getUri());
+        broker.acceptor.join();
+    }
+
+    /**
+     * @return the URI clients connect to, e.g. tcp://127.0.0.1:50123
+     */
+    public String getUri() {
+        return "tcp://127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    private void accept() {
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Connection connection = new Connection(socket);
+                connections.add(connection);
+                Thread reader = new Thread(connection::read, "broker-connection");
+                reader.setDaemon(true);
+                reader.start();
+            }
+        } catch (IOException e) {
+            // The server socket has been closed
+        }
+    }
+
+    /**
+     * Sends a message to every connection subscribed to its topic, and keeps it for later subscribers when it is
+     * retained. An empty retained message deletes the one kept for its topic.
+     */
+    private void route(String topic, byte[] payload, int qos, boolean retain) {
+        if (retain) {
+            if (payload.length == 0) {
+                retained.remove(topic);
+            } else {
+                retained.put(topic, new Message(topic, payload, qos));
+            }
+        }
+        for (Connection connection : connections) {
+            Integer subscribedQos = connection.subscribedQos(topic);
+            if (subscribedQos != null) {
+                connection.deliver(topic, payload, Math.min(qos, subscribedQos), false);
+            }
+        }
+    }
+
+    /**
+     * @param filter topic filter, where + matches one topic level and a trailing # any number of them
+     * @param topic topic of a message
+     * @return true when the filter matches the topic
+     */
+    private static boolean matches(String filter, String topic) {
+        String[] filterLevels = filter.split("/", -1);
+        String[] topicLevels = topic.split("/", -1);
+        for (int level = 0; level < filterLevels.length; level++) {
+            if (filterLevels[level].equals("#")) {
+                return true;
+            }
+            if (level >= topicLevels.length
+                    || !filterLevels[level].equals("+") && !filterLevels[level].equals(topicLevels[level])) {
+                return false;
+            }
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+
+    private final class Connection {
+        private final Socket socket;
+        private final OutputStream out;
+        private final Map<String, Integer> subscriptions = new ConcurrentHashMap<>();
+        private final AtomicInteger packetIds = new AtomicInteger();
+        private final AtomicBoolean open = new AtomicBoolean(true);
+        private volatile Message will; // Published when the connection closes without a DISCONNECT
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        private void read() {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+                while (true) {
+                    int header = in.read();
+                    if (header < 0) {
+                        return;
+                    }
+                    byte[] body = new byte[readRemainingLength(in)];
+                    in.readFully(body);
+                    if (!handle(header, body)) {
+                        return;
+                    }
+                }
+            } catch (EOFException | SocketException e) {
+                // The client has gone away
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * @return false when the connection should be closed
+         */
+        private boolean handle(int header, byte[] body) throws IOException {
+            Packet packet = new Packet(body);
+            switch (header >>> 4) {
+                case CONNECT: {
+                    packet.readString(); // Protocol name
+                    packet.readByte(); // Protocol level
+                    int flags = packet.readByte();
+                    packet.readShort(); // Keep alive
+                    packet.readString(); // Client id
+                    if ((flags & 0x04) != 0) {
+                        String topic = packet.readString();
+                        byte[] payload = packet.readBytes(packet.readShort());
+                        will = new Message(topic, payload, Math.min((flags >>> 3) & 3, 1), (flags & 0x20) != 0);
+                    }
+                    send(CONNACK << 4, new byte[]{0, 0});
+                    return true;
+                }
+                case PUBLISH: {
+                    int qos = (header >>> 1) & 3;
+                    String topic = packet.readString();
+                    int packetId = qos > 0 ? packet.readShort() : 0;
+                    byte[] payload = packet.readRest();
+                    if (qos > 0) {
+                        send(PUBACK << 4, new byte[]{(byte) (packetId >>> 8), (byte) packetId});
+                    }
+                    route(topic, payload, Math.min(qos, 1), (header & 1) != 0);
+                    return true;
+                }
+                case SUBSCRIBE: {
+                    int packetId = packet.readShort();
+                    ByteArrayBuilder granted = new ByteArrayBuilder();
+                    granted.add(packetId >>> 8).add(packetId);
+                    Map<String, Integer> added = new LinkedHashMap<>();
+                    while (packet.hasMore()) {
+                        String filter = packet.readString();
+                        int qos = Math.min(packet.readByte(), 1);
+                        subscriptions.put(filter, qos);
+                        added.put(filter, qos);
+                        granted.add(qos);
+                    }
+                    send(SUBACK << 4, granted.toByteArray());
+                    for (Message message : retained.values()) {
+                        for (Map.Entry<String, Integer> filter : added.entrySet()) {
+                            if (matches(filter.getKey(), message.topic)) {
+                                deliver(message.topic, message.payload, Math.min(message.qos, filter.getValue()), true);
+                                break;
+                            }
+                        }
+                    }
+                    return true;
+                }
+                case UNSUBSCRIBE: {
+                    int packetId = packet.readShort();
+                    while (packet.hasMore()) {
+                        subscriptions.remove(packet.readString());
+                    }
+                    send(UNSUBACK << 4, new byte[]{(byte) (packetId >>> 8), (byte) packetId});
+                    return true;
+                }
+                case PUBACK:
+                    return true; // Deliveries are not retried, so acknowledgements need no bookkeeping
+                case PINGREQ:
+                    send(PINGRESP << 4, new byte[0]);
+                    return true;
+                case DISCONNECT:
+                    will = null;
+                    return false;
+                default:
+                    throw new IOException("Unsupported MQTT packet type " + (header >>> 4));
+            }
+        }
+
+        /**
+         * @return the highest QoS of the subscriptions matching the topic, or null if none matches
+         */
+        private Integer subscribedQos(String topic) {
+            Integer subscribedQos = null;
+            for (Map.Entry<String, Integer> subscription : subscriptions.entrySet()) {
+                if (matches(subscription.getKey(), topic)
+                        && (subscribedQos == null || subscription.getValue() > subscribedQos)) {
+                    subscribedQos = subscription.getValue();
+                }
+            }
+            return subscribedQos;
+        }
+
+        private void deliver(String topic, byte[] payload, int qos, boolean retain) {
+            byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+            ByteArrayBuilder body = new ByteArrayBuilder();
+            body.add(topicBytes.length >>> 8).add(topicBytes.length).add(topicBytes);
+            if (qos > 0) {
+                int packetId = packetIds.updateAndGet(id -> id % 0xFFFF + 1);
+                body.add(packetId >>> 8).add(packetId);
+            }
+            body.add(payload);
+            try {
+                send(PUBLISH << 4 | qos << 1 | (retain ? 1 : 0), body.toByteArray());
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void send(int header, byte[] body) throws IOException {
+            synchronized (out) {
+                out.write(header);
+                int length = body.length;
+                do {
+                    int digit = length % 128;
+                    length /= 128;
+                    out.write(length > 0 ? digit | 0x80 : digit);
+                } while (length > 0);
+                out.write(body);
+                out.flush();
+            }
+        }
+
+        private void close() {
+            if (!open.compareAndSet(true, false)) {
+                return;
+            }
+            connections.remove(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+            Message lastWill = will;
+            if (lastWill != null && !closed) {
+                route(lastWill.topic, lastWill.payload, lastWill.qos, lastWill.retain);
+            }
+        }
+    }
+
+    private static int readRemainingLength(InputStream in) throws IOException {
+        int length = 0;
+        int multiplier = 1;
+        int digit;
+        do {
+            digit = in.read();
+            if (digit < 0) {
+                throw new EOFException();
+            }
+            length += (digit & 0x7F) * multiplier;
+            multiplier *= 128;
+        } while ((digit & 0x80) != 0);
+        return length;
+    }
+
+    /**
+     * Reads the fields of a packet body.
+     */
+    private static final class Packet {
+        private final byte[] body;
+        private int position;
+
+        private Packet(byte[] body) {
+            this.body = body;
+        }
+
+        private boolean hasMore() {
+            return position < body.length;
+        }
+
+        private int readByte() {
+            return body[position++] & 0xFF;
+        }
+
+        private int readShort() {
+            return readByte() << 8 | readByte();
+        }
+
+        private String readString() {
+            int length = readShort();
+            String value = new String(body, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private byte[] readBytes(int length) {
+            byte[] bytes = new byte[length];
+            System.arraycopy(body, position, bytes, 0, length);
+            position += length;
+            return bytes;
+        }
+
+        private byte[] readRest() {
+            byte[] rest = new byte[body.length - position];
+            System.arraycopy(body, position, rest, 0, rest.length);
+            position = body.length;
+            return rest;
+        }
+    }
+
+    /**
+     * A retained message or a last will.
+     */
+    private static final class Message {
+        private final String topic;
+        private final byte[] payload;
+        private final int qos;
+        private final boolean retain;
+
+        private Message(String topic, byte[] payload, int qos) {
+            this(topic, payload, qos, true);
+        }
+
+        private Message(String topic, byte[] payload, int qos, boolean retain) {
+            this.topic = topic;
+            this.payload = payload;
+            this.qos = qos;
+            this.retain = retain;
+        }
+    }
+
+    /**
+     * Builds a packet body.
+     */
+    private static final class ByteArrayBuilder extends java.io.ByteArrayOutputStream {
+        private ByteArrayBuilder add(int value) {
+            write(value);
+            return this;
+        }
+
+        private ByteArrayBuilder add(byte[] bytes) {
+            write(bytes, 0, bytes.length);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the JSON and binary free-slots payloads in size and in the time it takes to write them.
+ * Before measuring it decodes the binary payload of every selected date range and checks it against the schedules it
+ * was encoded from, so a broken codec fails the benchmark.
+ * Optional arguments: number of dental offices and number of bookings,
+ * e.g. java FreeSlotsEncodingBenchmark 5000 200000
+ */
+public class FreeSlotsEncodingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int offices = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int bookings = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+
+        SyntheticData data = new SyntheticData(15);
+        Filter filter = new Filter();
+        filter.makeDentistArray(SyntheticData.message(data.dentistRegistry(offices)));
+        filter.makeBookingArray(SyntheticData.message(data.bookingRegistry(bookings, offices, 20)));
+
+        for (int days = 1; days <= 7; days += 6) {
+            SelectedDates selectedDates = new SelectedDates(SyntheticData.FIRST_DAY,
+                    SyntheticData.FIRST_DAY.plusDays(days - 1));
+            ArrayList<Schedule> schedules = filter.getAvailability(selectedDates);
+            checkRoundTrip(schedules);
+
+            byte[] json = JsonWriter.forThread().freeSlots(schedules);
+            byte[] binary = FreeSlotsCodec.encode(schedules);
+            System.out.println(offices + " dental offices, " + bookings + " bookings, " + days + " day(s)");
+            System.out.printf("  JSON %,d bytes, binary %,d bytes (%.1f%%)%n", json.length, binary.length,
+                    100.0 * binary.length / json.length);
+
+            BenchmarkRunner runner = new BenchmarkRunner(20, 50);
+            runner.run("  encode JSON", 1, () -> JsonWriter.forThread().freeSlots(schedules).length);
+            runner.run("  encode binary", 1, () -> FreeSlotsCodec.encode(schedules).length);
+            runner.run("  decode binary", 1, () -> FreeSlotsCodec.decode(binary).size());
+        }
+    }
+
+    private static void checkRoundTrip(List<Schedule> schedules) {
+        List<FreeSlotsCodec.DecodedSchedule> decoded = FreeSlotsCodec.decode(FreeSlotsCodec.encode(schedules));
+        if (decoded.size() != schedules.size()) {
+            throw new IllegalStateException("Decoded " + decoded.size() + " of " + schedules.size() + " schedules");
+        }
+        for (int i = 0; i < schedules.size(); i++) {
+            Schedule schedule = schedules.get(i);
+            FreeSlotsCodec.DecodedSchedule decodedSchedule = decoded.get(i);
+            SlotGrid expected = schedule.getSlotGrid();
+            SlotGrid actual = decodedSchedule.getSlotGrid();
+
+            boolean same = decodedSchedule.getDentistid() == schedule.getDentist().getId()
+                    && decodedSchedule.getDate().equals(schedule.getSelectedDate())
+                    && actual.getOpeningMinute() == expected.getOpeningMinute()
+                    && actual.getSlotDuration() == expected.getSlotDuration()
+                    && actual.getSlotCount() == expected.getSlotCount();
+            for (int slot = 0; same && slot < expected.getSlotCount(); slot++) {
+                same = actual.getFreeChairs(slot) == expected.getFreeChairs(slot);
+            }
+            if (!same) {
+                throw new IllegalStateException("Schedule " + i + " differs after decoding: " + schedule);
+            }
+        }
+    }
+}
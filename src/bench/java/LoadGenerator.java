@@ -0,0 +1,372 @@
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LoadGenerator measures the component end to end on one machine. It starts an EmbeddedBroker and the component
+ * (Communicator.main) in this process, sends Dentists and BookingRegistry messages and then BookingRequests and
+ * AvailabilityRequests at fixed rates, and reports latency percentiles and throughput of the responses.
+ *
+ * Options are given as key=value arguments:
+ * offices, bookings (synthetic registries, default 1000 and 100000),
+ * requests, rate (number of BookingRequests and BookingRequests per second, default 20000 and 2000),
+ * availabilityRate (AvailabilityRequests per second, default 20),
+ * replay (a recorded traffic file to send instead of synthetic requests) and speed (replay speed, default 1).
+ * Component options are passed as system properties, e.g. -Davailability.batchWindowMillis=5.
+ * With broker=tcp://localhost:1883 it uses a broker and components that are already running instead, e.g. several
+ * instances of a Cluster sharing a standalone EmbeddedBroker.
+ *
+ * With "record" as the first argument it records traffic from a running broker instead:
+ * record broker=tcp://localhost:1883 file=traffic.txt seconds=60.
+ * A traffic file has one message per line: milliseconds since the start, topic and payload separated by a space.
+ */
+public class LoadGenerator implements MqttCallback {
+    private static final String[] REQUEST_TOPICS = {"Dentists", "BookingRegistry", "BookingRegistryDelta",
+            "BookingRequest", "AvailabilityRequest"};
+    private static final String[] RESPONSE_TOPICS = {"SuccessfulBooking", "BookingResponse", "free-slots",
+            "free-slots/binary"};
+    private static final int QOS = 1;
+    private static final int MAX_INFLIGHT = 10000;
+    private static final long DRAIN_SECONDS = 30; // Longest wait for the last responses
+
+    private final MqttAsyncClient client;
+
+    // Send times of requests waiting for their response, bookings by booking key and free slots in order
+    private final Map<Long, Long> pendingBookings = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Long> pendingAvailability = new ConcurrentLinkedQueue<>();
+    private final LatencyRecorder bookingLatencies = new LatencyRecorder();
+    private final LatencyRecorder availabilityLatencies = new LatencyRecorder();
+    private final AtomicLong notSent = new AtomicLong();
+    private final AtomicLong unexpected = new AtomicLong(); // Booking responses that were not waited for
+    private volatile CountDownLatch probe;
+    private volatile BufferedWriter recording;
+    private volatile long recordingStart;
+
+    public LoadGenerator(String broker, String clientId) throws MqttException {
+        client = new MqttAsyncClient(broker, clientId, new MemoryPersistence());
+        client.setCallback(this);
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setMaxInflight(MAX_INFLIGHT);
+        client.connect(options).waitForCompletion();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("record")) {
+            Map<String, String> options = options(Arrays.copyOfRange(args, 1, args.length));
+            record(options.getOrDefault("broker", "tcp://localhost:1883"),
+                    options.getOrDefault("file", "traffic.txt"),
+                    Long.parseLong(options.getOrDefault("seconds", "60")));
+            return;
+        }
+
+        Map<String, String> options = options(args);
+        EmbeddedBroker broker = options.containsKey("broker") ? null : new EmbeddedBroker();
+        try {
+            String uri = broker != null ? broker.getUri() : options.get("broker");
+            if (broker != null) {
+                System.setProperty("availability.broker", uri);
+                Communicator.main(new String[0]);
+            }
+
+            LoadGenerator generator = new LoadGenerator(uri, "load-generator");
+            generator.subscribe(RESPONSE_TOPICS);
+            generator.awaitComponent();
+
+            long start = System.nanoTime();
+            if (options.containsKey("replay")) {
+                generator.replay(options.get("replay"), Double.parseDouble(options.getOrDefault("speed", "1")));
+            } else {
+                int offices = Integer.parseInt(options.getOrDefault("offices", "1000"));
+                int bookings = Integer.parseInt(options.getOrDefault("bookings", "100000"));
+                SyntheticData data = new SyntheticData(19);
+                generator.sendRegistries(data, offices, bookings);
+                start = System.nanoTime();
+                generator.sendSynthetic(data, offices,
+                        Integer.parseInt(options.getOrDefault("requests", "20000")),
+                        Double.parseDouble(options.getOrDefault("rate", "2000")),
+                        Double.parseDouble(options.getOrDefault("availabilityRate", "20")));
+            }
+            generator.awaitResponses();
+            generator.report(System.nanoTime() - start);
+            generator.client.disconnect().waitForCompletion();
+        } finally {
+            if (broker != null) {
+                broker.close();
+            }
+        }
+        System.exit(0); // The component keeps its MQTT client running
+    }
+
+    /**
+     * Waits until the component has subscribed, by sending AvailabilityRequests until one is answered.
+     */
+    private void awaitComponent() throws Exception {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            if (sendProbe(200)) {
+                return;
+            }
+        }
+        throw new IllegalStateException("The component did not answer");
+    }
+
+    /**
+     * Sends the registries, then waits for an answered AvailabilityRequest, which the component only handles after
+     * the registries as they arrive on the same callback thread.
+     */
+    private void sendRegistries(SyntheticData data, int offices, int bookings) throws Exception {
+        publish("Dentists", data.dentistRegistry(offices));
+        publish("BookingRegistry", data.bookingRegistry(bookings, offices, SyntheticData.DAYS));
+        if (!sendProbe(TimeUnit.MINUTES.toMillis(5))) {
+            throw new IllegalStateException("The component did not read the registries");
+        }
+        System.out.println("Registries sent: " + offices + " dental offices, " + bookings + " bookings");
+    }
+
+    private boolean sendProbe(long timeoutMillis) throws Exception {
+        probe = new CountDownLatch(1);
+        publish("AvailabilityRequest", "{\"date\": \"" + SyntheticData.FIRST_DAY + "\"}");
+        boolean answered = probe.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        probe = null;
+        return answered;
+    }
+
+    /**
+     * Sends BookingRequests and AvailabilityRequests, each at its own fixed rate.
+     */
+    private void sendSynthetic(SyntheticData data, int offices, int requests, double rate, double availabilityRate)
+            throws MqttException {
+        long bookingInterval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long availabilityInterval = availabilityRate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / availabilityRate) : 0;
+        long start = System.nanoTime();
+        int availabilityRequests = 0;
+
+        for (int i = 0; i < requests; i++) {
+            long bookingOffset = i * bookingInterval;
+            while (availabilityInterval > 0 && availabilityRequests * availabilityInterval <= bookingOffset) {
+                parkUntil(start + availabilityRequests * availabilityInterval);
+                publish("AvailabilityRequest", data.availabilityRequest(
+                        SyntheticData.FIRST_DAY.plusDays(availabilityRequests++ % SyntheticData.DAYS)));
+            }
+            parkUntil(start + bookingOffset);
+            // User ids above the ones in the booking registry, so requests are never replacing a registered booking
+            publish("BookingRequest", data.bookingRequest(500000 + i % 500000, i % 100000, offices,
+                    SyntheticData.DAYS));
+        }
+        System.out.println("Sent " + requests + " booking requests at " + rate + "/s");
+    }
+
+    /**
+     * Sends the messages of a traffic file at the times they were recorded, divided by the speed.
+     */
+    private void replay(String file, double speed) throws IOException, MqttException {
+        long start = System.nanoTime();
+        long messages = 0;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ", 3);
+                if (fields.length < 3) {
+                    continue;
+                }
+                parkUntil(start + (long) (TimeUnit.MILLISECONDS.toNanos(Long.parseLong(fields[0])) / speed));
+                publish(fields[1], fields[2]);
+                messages++;
+            }
+        }
+        System.out.println("Replayed " + messages + " messages from " + file);
+    }
+
+    private void publish(String topic, String payload) throws MqttException {
+        long now = System.nanoTime();
+        if (topic.equals("BookingRequest")) {
+            pendingBookings.put(bookingKey(payload), now);
+        } else if (topic.equals("AvailabilityRequest") && probe == null) {
+            pendingAvailability.add(now);
+        }
+        try {
+            client.publish(topic, payload.getBytes(StandardCharsets.UTF_8), QOS, false);
+        } catch (MqttException e) {
+            if (e.getReasonCode() != MqttException.REASON_CODE_MAX_INFLIGHT) {
+                throw e;
+            }
+            notSent.incrementAndGet(); // Sending faster than the broker acknowledges
+        }
+    }
+
+    @Override
+    public void messageArrived(String topic, MqttMessage message) throws IOException {
+        long now = System.nanoTime();
+        if (recording != null) {
+            recording.write(TimeUnit.NANOSECONDS.toMillis(now - recordingStart) + " " + topic + " " +
+                    new String(message.getPayload(), StandardCharsets.UTF_8).replace('\n', ' '));
+            recording.newLine();
+            return;
+        }
+
+        CountDownLatch currentProbe = probe;
+        if (topic.startsWith("free-slots")) {
+            if (currentProbe != null) {
+                currentProbe.countDown();
+                return;
+            }
+            Long sent = pendingAvailability.poll();
+            if (sent != null) {
+                availabilityLatencies.add(now - sent);
+            }
+        } else {
+            Long sent = pendingBookings.remove(bookingKey(new String(message.getPayload(), StandardCharsets.UTF_8)));
+            if (sent != null) {
+                bookingLatencies.add(now - sent);
+            } else {
+                unexpected.incrementAndGet(); // e.g. a request answered twice
+            }
+        }
+    }
+
+    private void awaitResponses() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_SECONDS);
+        while ((!pendingBookings.isEmpty() || !pendingAvailability.isEmpty()) && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        // Unanswered requests include those the component sheds without a reply when too many replies are waiting
+        bookingLatencies.report("BookingRequest", pendingBookings.size(), seconds);
+        availabilityLatencies.report("AvailabilityRequest", pendingAvailability.size(), seconds);
+        if (notSent.get() > 0) {
+            System.out.println("Not sent, too many messages in flight: " + notSent.get());
+        }
+        if (unexpected.get() > 0) {
+            System.out.println("Unexpected or repeated booking responses: " + unexpected.get());
+        }
+    }
+
+    /**
+     * Records the requests and responses passing through a broker into a traffic file.
+     */
+    private static void record(String broker, String file, long seconds) throws Exception {
+        LoadGenerator recorder = new LoadGenerator(broker, "load-recorder");
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+            recorder.recordingStart = System.nanoTime();
+            recorder.recording = writer;
+            recorder.subscribe(REQUEST_TOPICS);
+            TimeUnit.SECONDS.sleep(seconds);
+            recorder.client.disconnect().waitForCompletion();
+            recorder.recording = null;
+        }
+        recorder.client.close();
+        System.out.println("Recorded " + seconds + " seconds of traffic to " + file);
+    }
+
+    private void subscribe(String[] topics) throws MqttException {
+        int[] qos = new int[topics.length];
+        Arrays.fill(qos, QOS);
+        client.subscribe(topics, qos).waitForCompletion();
+    }
+
+    /**
+     * @return the userid and requestid of a booking request or response, see Filter.bookingKey
+     */
+    private static long bookingKey(String json) {
+        return numberField(json, "\"userid\"") * 100000 + numberField(json, "\"requestid\"");
+    }
+
+    private static long numberField(String json, String name) {
+        int index = json.indexOf(name);
+        if (index < 0) {
+            return -1;
+        }
+        index = json.indexOf(':', index) + 1;
+        while (index < json.length() && Character.isWhitespace(json.charAt(index))) {
+            index++;
+        }
+        long value = 0;
+        while (index < json.length() && Character.isDigit(json.charAt(index))) {
+            value = value * 10 + json.charAt(index++) - '0';
+        }
+        return value;
+    }
+
+    private static void parkUntil(long nanoTime) {
+        long wait;
+        while ((wait = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("Options are given as key=value: " + arg);
+            }
+            options.put(option[0], option[1]);
+        }
+        return options;
+    }
+
+    @Override
+    public void connectionLost(Throwable throwable) {
+        System.err.println("Load generator lost its connection: " + throwable);
+    }
+
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken token) {
+    }
+
+    /**
+     * Collects latencies and prints their percentiles.
+     */
+    private static final class LatencyRecorder {
+        private long[] latencies = new long[1024];
+        private int count;
+
+        private synchronized void add(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+
+        private synchronized void report(String name, int unanswered, double seconds) {
+            if (count == 0) {
+                System.out.println(name + ": no responses, " + unanswered + " unanswered");
+                return;
+            }
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            System.out.printf("%s: %d responses, %d unanswered, %.1f responses/s%n", name, count, unanswered,
+                    count / seconds);
+            System.out.printf("  latency ms p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+                    millis(sorted, 0.5), millis(sorted, 0.9), millis(sorted, 0.99), millis(sorted, 0.999),
+                    sorted[sorted.length - 1] / 1e6);
+        }
+
+        private static double millis(long[] sorted, double percentile) {
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares looking up taken chairs in the OccupancyIndex with scanning the booking registry,
+ * for booking registries of growing size.
+ * Sizes can be given as arguments, e.g. java OccupancyIndexBenchmark 1000 100000
+ */
+public class OccupancyIndexBenchmark {
+    private static final int DENTISTS = 1000;
+    private static final int REQUESTS = 1000;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd H:mm");
+
+    public static void main(String[] args) {
+        int[] registrySizes = {1000, 10000, 100000, 1000000};
+        if (args.length > 0) {
+            registrySizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                registrySizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for (int registrySize : registrySizes) {
+            Random random = new Random(registrySize);
+            ArrayList<Booking> bookings = new ArrayList<>();
+            for (int i = 0; i < registrySize; i++) {
+                bookings.add(randomBooking(random, i));
+            }
+            ArrayList<ReceivedBooking> requests = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                Booking booking = randomBooking(random, i);
+                requests.add(new ReceivedBooking(booking.getUserid(), booking.getRequestid(), booking.getDentistid(),
+                        booking.getIssuance(), booking.getTime()));
+            }
+
+            System.out.println("Booking registry with " + registrySize + " bookings");
+            OccupancyIndex occupancy = new OccupancyIndex(bookings);
+
+            new BenchmarkRunner(3, 5).run("  build index (per booking)", registrySize,
+                    () -> new OccupancyIndex(bookings).size());
+            // Scanning gets slow for large registries, so fewer rounds are measured
+            int scanRounds = registrySize >= 100000 ? 1 : 5;
+            new BenchmarkRunner(1, scanRounds).run("  registry scan (per request)", REQUESTS,
+                    () -> scanAll(requests, bookings));
+            new BenchmarkRunner(20, 100).run("  index lookup (per request)", REQUESTS,
+                    () -> lookupAll(requests, occupancy));
+        }
+    }
+
+    /**
+     * Counts taken chairs the way Filter did before the index, by scanning the registry for every request.
+     */
+    private static long scanAll(ArrayList<ReceivedBooking> requests, ArrayList<Booking> bookings) {
+        long taken = 0;
+        for (ReceivedBooking request : requests) {
+            ArrayList<Booking> dentistBookings = new ArrayList<>();
+            for (Booking booking : bookings) {
+                if (booking.getDentistid() == request.getDentistid()) {
+                    dentistBookings.add(booking);
+                }
+            }
+            for (Booking booking : dentistBookings) {
+                if (booking.getTime().equals(request.getTime())) {
+                    taken++;
+                }
+            }
+        }
+        return taken;
+    }
+
+    private static long lookupAll(ArrayList<ReceivedBooking> requests, OccupancyIndex occupancy) {
+        long taken = 0;
+        for (ReceivedBooking request : requests) {
+            taken += occupancy.countBookings(request.getDentistid(), request.getEpochMinute());
+        }
+        return taken;
+    }
+
+    private static Booking randomBooking(Random random, int i) {
+        LocalDateTime time = LocalDateTime.of(2021, 1, 4, 8, 0)
+                .plusDays(random.nextInt(30))
+                .plusMinutes(30 * random.nextInt(16));
+        return new Booking(i % 1000000, i % 100000, 1 + random.nextInt(DENTISTS), 1609459200000L + i,
+                time.format(TIME_FORMAT));
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Measures how Filter.getAvailability scales with the number of availability workers, from one worker up to the
+ * number of available cores.
+ * Optional arguments: number of dental offices, number of bookings and the largest number of workers,
+ * e.g. java ParallelAvailabilityBenchmark 5000 500000 16
+ */
+public class ParallelAvailabilityBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int offices = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int bookings = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxWorkers = args.length > 2 ? Integer.parseInt(args[2]) : cores;
+
+        SyntheticData data = new SyntheticData(8);
+        Filter filter = new Filter();
+        filter.makeDentistArray(SyntheticData.message(data.dentistRegistry(offices)));
+        filter.makeBookingArray(SyntheticData.message(data.bookingRegistry(bookings, offices, 20)));
+        SelectedDates selectedDates = filter.makeSelectedDates(SyntheticData.message(data.availabilityRequest(SyntheticData.FIRST_DAY)));
+
+        System.out.println(offices + " dental offices, " + bookings + " bookings, " + cores + " cores");
+        String expected = filter.getAvailability(selectedDates).toString();
+        double sequential = 0;
+        for (int workers = 1; workers <= maxWorkers; workers *= 2) {
+            filter.setAvailabilityWorkers(workers);
+            if (!filter.getAvailability(selectedDates).toString().equals(expected)) {
+                throw new IllegalStateException("Schedules differ with " + workers + " workers");
+            }
+            double nanos = new BenchmarkRunner(10, 30).run("  getAvailability, " + workers + " worker(s)", 1,
+                    () -> filter.getAvailability(selectedDates).size());
+            if (workers == 1) {
+                sequential = nanos;
+            }
+            System.out.printf("    speedup %.2fx%n", sequential / nanos);
+        }
+        filter.setAvailabilityWorkers(1);
+    }
+}
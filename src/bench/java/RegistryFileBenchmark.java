@@ -0,0 +1,80 @@
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares the two ways the component gets its registries at start-up: parsing the Dentists and BookingRegistry
+ * messages, or reading the registry file, and checks that both give the same free slots.
+ * Optional arguments: the scales to run, e.g. java RegistryFileBenchmark SMALL MEDIUM, by default all of them.
+ * The HUGE scale needs a heap of about 3 GB.
+ */
+public class RegistryFileBenchmark {
+    public static void main(String[] args) throws Exception {
+        List<SyntheticData.Scale> scales = new ArrayList<>();
+        for (String arg : args) {
+            scales.add(SyntheticData.Scale.valueOf(arg));
+        }
+        if (scales.isEmpty()) {
+            scales.addAll(Arrays.asList(SyntheticData.Scale.values()));
+        }
+
+        Path path = Files.createTempFile("registries", ".bin");
+        try {
+            for (SyntheticData.Scale scale : scales) {
+                run(scale, new RegistryFile(path));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static void run(SyntheticData.Scale scale, RegistryFile registryFile) throws Exception {
+        SyntheticData data = new SyntheticData(21);
+        MqttMessage dentists = SyntheticData.message(data.dentistRegistry(scale.getOffices()));
+        MqttMessage bookings = SyntheticData.message(
+                data.bookingRegistry(scale.getBookings(), scale.getOffices(), SyntheticData.DAYS));
+        SelectedDates selectedDates = new SelectedDates(SyntheticData.FIRST_DAY, SyntheticData.FIRST_DAY);
+
+        Filter parsed = new Filter();
+        parsed.makeDentistArray(dentists);
+        parsed.makeBookingArray(bookings);
+        registryFile.write(parsed.getRegistries());
+
+        Filter restored = new Filter();
+        restored.restoreRegistries(registryFile.read());
+        if (!Arrays.equals(parsed.getFreeSlots(selectedDates), restored.getFreeSlots(selectedDates)) ||
+                parsed.getRegistries().getBookings().size() != restored.getRegistries().getBookings().size()) {
+            throw new IllegalStateException("Registries read from the file differ from the parsed ones");
+        }
+
+        System.out.println(scale + ", registry file " + Files.size(registryFile.getPath()) / 1024 + " KiB");
+        BenchmarkRunner runner = new BenchmarkRunner(2, 5);
+        runner.run("  Parse Dentists and BookingRegistry", 1, () -> {
+            Filter filter = new Filter();
+            try {
+                filter.makeDentistArray(dentists);
+                filter.makeBookingArray(bookings);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return filter.getRegistries().getBookings().size();
+        });
+        runner.run("  Read registry file", 1, () -> {
+            Filter filter = new Filter();
+            filter.restoreRegistries(registryFile.read());
+            return filter.getRegistries().getBookings().size();
+        });
+        runner.run("  Write registry file", 1, () -> {
+            try {
+                registryFile.write(parsed.getRegistries());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return 1;
+        });
+    }
+}
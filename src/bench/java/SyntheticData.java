@@ -0,0 +1,140 @@
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * SyntheticData creates dentist registries, booking registries and requests in the same JSON format as the
+ * Dentist and Booking components, so benchmarks can run without them.
+ */
+public class SyntheticData {
+    public static final LocalDate FIRST_DAY = LocalDate.of(2021, 1, 4); // A Monday
+    public static final int DAYS = 20; // Bookings are spread over four working weeks starting at FIRST_DAY
+    private static final String[] OPENING_HOURS = {"7:00-15:00", "8:00-16:00", "9:00-17:00", "10:00-18:00", "7:00-19:00"};
+
+    /**
+     * Sizes of the generated registries, from a single city to a national deployment.
+     */
+    public enum Scale {
+        SMALL(10, 1000),
+        MEDIUM(100, 10000),
+        LARGE(1000, 100000),
+        HUGE(9999, 1000000); // Dentist ids have at most four digits
+
+        private final int offices;
+        private final int bookings;
+
+        Scale(int offices, int bookings) {
+            this.offices = offices;
+            this.bookings = bookings;
+        }
+
+        public int getOffices() {
+            return offices;
+        }
+
+        public int getBookings() {
+            return bookings;
+        }
+
+        @Override
+        public String toString() {
+            return name() + " (" + offices + " offices, " + bookings + " bookings)";
+        }
+    }
+
+    private final Random random;
+
+    /**
+     * @param seed seed of the random generator, the same seed always gives the same data
+     */
+    public SyntheticData(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * @param offices number of dental offices, at most 9999
+     * @return a Dentists message with dental offices that have the ids 1 to offices
+     */
+    public String dentistRegistry(int offices) {
+        StringBuilder json = new StringBuilder("{\"dentists\": [");
+        for (int id = 1; id <= offices; id++) {
+            if (id > 1) {
+                json.append(',');
+            }
+            json.append("{\"id\": ").append(id)
+                    .append(", \"name\": \"Dental Office ").append(id)
+                    .append("\", \"owner\": \"Owner ").append(id)
+                    .append("\", \"dentists\": ").append(1 + random.nextInt(4))
+                    .append(", \"address\": \"Street ").append(id)
+                    .append("\", \"city\": \"Gothenburg\", \"coordinate\": {\"latitude\": ")
+                    .append(String.format(Locale.ROOT, "%.6f", 57.6 + random.nextInt(200000) / 1000000.0))
+                    .append(", \"longitude\": ")
+                    .append(String.format(Locale.ROOT, "%.6f", 11.8 + random.nextInt(300000) / 1000000.0))
+                    .append("}, \"openinghours\": {");
+            String[] days = {"monday", "tuesday", "wednesday", "thursday", "friday"};
+            for (int day = 0; day < days.length; day++) {
+                if (day > 0) {
+                    json.append(", ");
+                }
+                json.append('"').append(days[day]).append("\": \"")
+                        .append(OPENING_HOURS[random.nextInt(OPENING_HOURS.length)]).append('"');
+            }
+            json.append("}}");
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * @param bookings number of bookings
+     * @param offices bookings are spread over the dental offices with the ids 1 to offices
+     * @param days bookings are spread over this many days starting at FIRST_DAY
+     * @return a BookingRegistry message
+     */
+    public String bookingRegistry(int bookings, int offices, int days) {
+        StringBuilder json = new StringBuilder("{\"bookings\": [");
+        for (int i = 0; i < bookings; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendBooking(json, i % 1000000, i % 100000, offices, days);
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * @param userid id of the user making the request
+     * @param requestid id of the request
+     * @param offices the request is for one of the dental offices with the ids 1 to offices
+     * @param days the request is for one of this many days starting at FIRST_DAY
+     * @return a BookingRequest message
+     */
+    public String bookingRequest(int userid, int requestid, int offices, int days) {
+        return appendBooking(new StringBuilder(), userid, requestid, offices, days).toString();
+    }
+
+    /**
+     * @param date selected date
+     * @return an AvailabilityRequest message
+     */
+    public String availabilityRequest(LocalDate date) {
+        return "{\"date\": \"" + date + "\"}";
+    }
+
+    public static MqttMessage message(String json) {
+        return new MqttMessage(json.getBytes());
+    }
+
+    private StringBuilder appendBooking(StringBuilder json, int userid, int requestid, int offices, int days) {
+        LocalDate date = FIRST_DAY.plusDays(random.nextInt(days));
+        int minute = 7 * 60 + 30 * random.nextInt(24);
+        return json.append("{\"userid\": ").append(userid)
+                .append(", \"requestid\": ").append(requestid)
+                .append(", \"dentistid\": ").append(1 + random.nextInt(offices))
+                .append(", \"issuance\": ").append(1609459200000L + random.nextInt(1000000000))
+                .append(", \"time\": \"").append(date).append(' ')
+                .append(minute / 60).append(':').append(minute % 60 == 0 ? "00" : "30")
+                .append("\"}");
+    }
+}
@@ -0,0 +1,170 @@
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the Validation rules with the String/regex checks the setters of Booking and Dentist used before.
+ * Before timing anything, it checks that both accept and reject exactly the same values.
+ */
+public class ValidationBenchmark {
+    private static final int VALUES = 10000;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        long[] ids = new long[VALUES];
+        long[] issuances = new long[VALUES];
+        double[] coordinates = new double[VALUES];
+        String[] times = new String[VALUES];
+        String[] names = new String[VALUES];
+        String[] openingHours = new String[VALUES];
+        String[] sampleNames = {"Your Dentist", "Tooth Fairy Dentist", "Dr. Sköld & Son", "The Crown", "", "Smile!"};
+        String[] sampleHours = {"7:00-19:00", "9:30-17:00", "7:----------", "8:-----------", "10:00-18:00"};
+        String[] sampleTimes = {"2020-12-14 10:00", "2020-12-14 9:30", "2020-12-14 25:00", "14/12/2020 10:00"};
+
+        for (int i = 0; i < VALUES; i++) {
+            ids[i] = random.nextInt(3000000) - 1000;
+            issuances[i] = random.nextBoolean() ? 1602406766314L + random.nextInt() : random.nextLong() % 100000000000000L;
+            coordinates[i] = random.nextInt(4) == 0 ? random.nextDouble() * 400 - 200
+                    : Math.round((random.nextDouble() * 180 - 90) * 1000000) / 1000000.0;
+            times[i] = sampleTimes[random.nextInt(sampleTimes.length)];
+            names[i] = sampleNames[random.nextInt(sampleNames.length)];
+            openingHours[i] = sampleHours[random.nextInt(sampleHours.length)];
+        }
+
+        for (int i = 0; i < VALUES; i++) {
+            check(legacyUserid(ids[i]) == Validation.isValidUserid(ids[i]), "userid " + ids[i]);
+            check(legacyRequestid(ids[i]) == Validation.isValidRequestid(ids[i]), "requestid " + ids[i]);
+            check(legacyDentistid(ids[i]) == Validation.isValidDentistid(ids[i]), "dentistid " + ids[i]);
+            check(legacyDentistNumber(ids[i]) == Validation.isValidDentistNumber(ids[i]), "dentists " + ids[i]);
+            check(legacyIssuance(issuances[i]) == Validation.isValidIssuance(issuances[i]), "issuance " + issuances[i]);
+            check(legacyLatitude(coordinates[i]) == Validation.isValidLatitude(coordinates[i]), "latitude " + coordinates[i]);
+            check(legacyLongitude(coordinates[i]) == Validation.isValidLongitude(coordinates[i]), "longitude " + coordinates[i]);
+            check(legacyTime(times[i]) == Validation.isValidTime(times[i]), "time " + times[i]);
+            check(legacyName(names[i]) == Validation.isValidName(names[i]), "name " + names[i]);
+            check(legacyAddress(names[i]) == Validation.isValidAddress(names[i]), "address " + names[i]);
+            check(legacyOpeningHours(openingHours[i]) == Validation.isValidOpeningHours(openingHours[i]),
+                    "opening hours " + openingHours[i]);
+        }
+        System.out.println("Validation accepts and rejects the same " + VALUES + " values as the regex checks");
+
+        BenchmarkRunner runner = new BenchmarkRunner(20, 50);
+        runner.run("regex: booking ids and issuance", VALUES, () -> {
+            long valid = 0;
+            for (int i = 0; i < VALUES; i++) {
+                if (legacyUserid(ids[i]) && legacyRequestid(ids[i]) && legacyDentistid(ids[i])
+                        && legacyIssuance(issuances[i])) {
+                    valid++;
+                }
+            }
+            return valid;
+        });
+        runner.run("Validation: booking ids and issuance", VALUES, () -> {
+            long valid = 0;
+            for (int i = 0; i < VALUES; i++) {
+                if (Validation.isValidUserid(ids[i]) && Validation.isValidRequestid(ids[i])
+                        && Validation.isValidDentistid(ids[i]) && Validation.isValidIssuance(issuances[i])) {
+                    valid++;
+                }
+            }
+            return valid;
+        });
+        runner.run("regex: booking time", VALUES, () -> {
+            long valid = 0;
+            for (int i = 0; i < VALUES; i++) {
+                if (legacyTime(times[i])) {
+                    valid++;
+                }
+            }
+            return valid;
+        });
+        runner.run("Validation: booking time", VALUES, () -> {
+            long valid = 0;
+            for (int i = 0; i < VALUES; i++) {
+                if (Validation.isValidTime(times[i])) {
+                    valid++;
+                }
+            }
+            return valid;
+        });
+        runner.run("regex: dentist text and coordinates", VALUES, () -> {
+            long valid = 0;
+            for (int i = 0; i < VALUES; i++) {
+                if (legacyName(names[i]) && legacyAddress(names[i]) && legacyLatitude(coordinates[i])
+                        && legacyLongitude(coordinates[i]) && legacyOpeningHours(openingHours[i])) {
+                    valid++;
+                }
+            }
+            return valid;
+        });
+        runner.run("Validation: dentist text and coordinates", VALUES, () -> {
+            long valid = 0;
+            for (int i = 0; i < VALUES; i++) {
+                if (Validation.isValidName(names[i]) && Validation.isValidAddress(names[i])
+                        && Validation.isValidLatitude(coordinates[i]) && Validation.isValidLongitude(coordinates[i])
+                        && Validation.isValidOpeningHours(openingHours[i])) {
+                    valid++;
+                }
+            }
+            return valid;
+        });
+    }
+
+    private static void check(boolean same, String value) {
+        if (!same) {
+            throw new IllegalStateException("Validation differs from the regex check for " + value);
+        }
+    }
+
+    // The checks below are the ones the setters used before Validation
+
+    private static boolean legacyUserid(long userid) {
+        return String.valueOf(userid).matches("[0-9]{1,6}");
+    }
+
+    private static boolean legacyRequestid(long requestid) {
+        return String.valueOf(requestid).matches("[0-9]{1,5}");
+    }
+
+    private static boolean legacyDentistid(long dentistid) {
+        return String.valueOf(dentistid).matches("[0-9]{1,4}");
+    }
+
+    private static boolean legacyDentistNumber(long dentistNumber) {
+        return String.valueOf(dentistNumber).matches("[0-9]{1,2}");
+    }
+
+    private static boolean legacyIssuance(long issuance) {
+        return String.valueOf(issuance).matches("[0-9]{13}");
+    }
+
+    private static boolean legacyTime(String time) {
+        try {
+            LocalDateTime.parse(time, DateTimeFormatter.ofPattern("yyyy-MM-dd H:mm"));
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean legacyName(String name) {
+        return Pattern.compile("^[^!?(){}<>#;/%&$£@=+*]+$").matcher(name).matches();
+    }
+
+    private static boolean legacyAddress(String address) {
+        return Pattern.compile("^[^!?(){}<>#;/%&$@=+*]+$").matcher(address).matches();
+    }
+
+    private static boolean legacyLatitude(double latitude) {
+        return String.valueOf(latitude).matches("^(\\+|-)?(?:90(?:(?:\\.0{1,6})?)|(?:[0-9]|[1-8][0-9])(?:(?:\\.[0-9]{1,6})?))$");
+    }
+
+    private static boolean legacyLongitude(double longitude) {
+        return String.valueOf(longitude).matches("^(\\+|-)?(?:180(?:(?:\\.0{1,6})?)|(?:[0-9]|[1-9][0-9]|1[0-7][0-9])(?:(?:\\.[0-9]{1,6})?))$");
+    }
+
+    private static boolean legacyOpeningHours(String openingHours) {
+        return !openingHours.matches("^[0-9][:][-]{10,11}$");
+    }
+}
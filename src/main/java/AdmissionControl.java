@@ -0,0 +1,92 @@
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AdmissionControl decides whether a request is taken in, before any work is done for it. A request is shed when too
+ * many requests are already waiting for a worker, when the rate limit of its topic has been used up, or, for booking
+ * requests, when it was issued so long ago that the user is no longer waiting for the answer.
+ */
+public class AdmissionControl {
+    private static final Duration LIMIT_REFRESH_PERIOD = Duration.ofSeconds(1);
+
+    /**
+     * Outcome of admitting a request, anything but ADMITTED means the request is shed.
+     */
+    public enum Decision {
+        ADMITTED, QUEUE_FULL, RATE_LIMITED, EXPIRED
+    }
+
+    private final int maxQueued;
+    private final long maxAgeMillis;
+    private final Map<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxQueued largest number of requests waiting for a worker, further requests are shed
+     * @param maxAgeMillis booking requests issued longer ago than this are shed, 0 never sheds them by age
+     */
+    public AdmissionControl(int maxQueued, long maxAgeMillis) {
+        if (maxQueued < 1 || maxAgeMillis < 0) {
+            throw new IllegalArgumentException("Queue limit has to be at least one and age limit at least zero: " +
+                    maxQueued + " requests, " + maxAgeMillis + " ms");
+        }
+        this.maxQueued = maxQueued;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Limits the requests of a topic. Requests over the limit are shed right away instead of waiting for a permit.
+     * @param topic topic the requests arrive on
+     * @param requestsPerSecond largest number of requests admitted per second
+     * @return the rate limiter of the topic
+     */
+    public RateLimiter limit(String topic, int requestsPerSecond) {
+        RateLimiterConfig config = RateLimiterConfig.custom()
+                .limitForPeriod(requestsPerSecond)
+                .limitRefreshPeriod(LIMIT_REFRESH_PERIOD)
+                .timeoutDuration(Duration.ZERO)
+                .build();
+        RateLimiter rateLimiter = RateLimiter.of(topic, config);
+        rateLimiters.put(topic, rateLimiter);
+        return rateLimiter;
+    }
+
+    /**
+     * @param topic topic the request arrived on
+     * @param queued number of requests of the topic waiting for a worker
+     * @return whether the request is admitted, or why it is shed
+     */
+    public Decision admit(String topic, int queued) {
+        if (queued >= maxQueued) {
+            return Decision.QUEUE_FULL;
+        }
+        RateLimiter rateLimiter = rateLimiters.get(topic);
+        if (rateLimiter != null && !rateLimiter.acquirePermission()) {
+            return Decision.RATE_LIMITED;
+        }
+        return Decision.ADMITTED;
+    }
+
+    /**
+     * Sheds a booking request by age before taking a permit from the rate limit, so late requests do not use it up.
+     * @param topic topic the request arrived on
+     * @param requestBooking booking request
+     * @param queued number of booking requests waiting for a worker
+     * @param now current time in epoch milliseconds
+     * @return whether the request is admitted, or why it is shed
+     */
+    public Decision admit(String topic, ReceivedBooking requestBooking, int queued, long now) {
+        if (maxAgeMillis > 0 && requestBooking.getIssuance() > 0 && now - requestBooking.getIssuance() > maxAgeMillis) {
+            return Decision.EXPIRED;
+        }
+        return admit(topic, queued);
+    }
+
+    public Collection<RateLimiter> getRateLimiters() {
+        return rateLimiters.values();
+    }
+}
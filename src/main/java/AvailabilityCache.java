@@ -0,0 +1,82 @@
+import java.util.Objects;
+
+/**
+ * AvailabilityCache keeps the free-slots payloads that have been computed recently, so repeated availability
+ * requests for the same dates do not compute every schedule again.
+ * Entries are keyed by the selected dates and encoding, and the versions of the dentist and booking registries they
+ * were computed from, and the least recently used entry is evicted when the cache is full, see LruCache.
+ * Cached payloads are shared between requests and must not be changed.
+ */
+public class AvailabilityCache {
+    private final LruCache<Key, byte[]> entries;
+
+    /**
+     * @param maxEntries the maximum number of payloads kept in the cache
+     */
+    public AvailabilityCache(int maxEntries) {
+        this.entries = new LruCache<>(maxEntries);
+    }
+
+    /**
+     * @param selectedDates selected dates and encoding
+     * @param dentistVersion version of the dentist registry
+     * @param bookingVersion version of the booking registry
+     * @return the cached payload, or null if it has to be computed
+     */
+    public byte[] get(SelectedDates selectedDates, long dentistVersion, long bookingVersion) {
+        return entries.get(new Key(selectedDates, dentistVersion, bookingVersion));
+    }
+
+    public void put(SelectedDates selectedDates, long dentistVersion, long bookingVersion, byte[] payload) {
+        entries.put(new Key(selectedDates, dentistVersion, bookingVersion), payload);
+    }
+
+    /**
+     * Removes all entries, called whenever one of the registries changes.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return entries.getHits();
+    }
+
+    public long getMisses() {
+        return entries.getMisses();
+    }
+
+    private static final class Key {
+        private final SelectedDates selectedDates;
+        private final long dentistVersion;
+        private final long bookingVersion;
+
+        private Key(SelectedDates selectedDates, long dentistVersion, long bookingVersion) {
+            this.selectedDates = selectedDates;
+            this.dentistVersion = dentistVersion;
+            this.bookingVersion = bookingVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return dentistVersion == key.dentistVersion && bookingVersion == key.bookingVersion
+                    && selectedDates.equals(key.selectedDates);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(selectedDates, dentistVersion, bookingVersion);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.jmx.JmxReporter;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.metrics.CircuitBreakerMetrics;
+import io.github.resilience4j.metrics.RateLimiterMetrics;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+
+import java.util.Map;
+
+/**
+ * AvailabilityMetrics collects the metrics of the Availability component in a Dropwizard MetricRegistry and exposes
+ * them through JMX, in the "availability" domain, e.g. to be viewed with jconsole.
+ *
+ * Per topic there is a counter of received messages and timers for the three steps of handling a message:
+ * parse (reading the message, and applying it for registry topics), decide and publish. Requests shed by admission
+ * control are counted per topic and reason.
+ *
+ * Gauges, circuit breakers and rate limiters registered again under a name that is taken replace the earlier metric,
+ * so several Communicators in one JVM can share the metrics, with the last one started reporting its values.
+ */
+public class AvailabilityMetrics {
+    private static final String JMX_DOMAIN = "availability";
+
+    private final MetricRegistry registry = new MetricRegistry();
+    private JmxReporter jmxReporter;
+
+    /**
+     * @param topic topic the message arrived on
+     * @return counter of messages received on the topic
+     */
+    public Counter received(String topic) {
+        return registry.counter(MetricRegistry.name("received", topic));
+    }
+
+    /**
+     * @param topic topic the message arrived on
+     * @return timer of parsing, and for registries applying, messages of the topic
+     */
+    public Timer parse(String topic) {
+        return registry.timer(MetricRegistry.name("parse", topic));
+    }
+
+    /**
+     * @param topic topic the request arrived on
+     * @return timer of deciding requests of the topic
+     */
+    public Timer decide(String topic) {
+        return registry.timer(MetricRegistry.name("decide", topic));
+    }
+
+    /**
+     * @param topic topic the response is published to
+     * @return timer of handing responses to the MQTT client
+     */
+    public Timer publish(String topic) {
+        return registry.timer(MetricRegistry.name("publish", topic));
+    }
+
+    /**
+     * @param outcome name of the outcome, e.g. accepted or rejected
+     * @return counter of booking decisions with the outcome
+     */
+    public Counter decisions(String outcome) {
+        return registry.counter(MetricRegistry.name("decisions", outcome));
+    }
+
+    /**
+     * @param topic topic the request arrived on
+     * @param reason why the request was shed, e.g. QUEUE_FULL or RATE_LIMITED
+     * @return counter of requests of the topic shed without being decided
+     */
+    public Counter shed(String topic, String reason) {
+        return registry.counter(MetricRegistry.name("shed", topic, reason));
+    }
+
+    /**
+     * Registers a value that is read whenever the metrics are reported, e.g. a registry size or a queue depth.
+     * @param name name of the gauge
+     * @param gauge reads the current value
+     * @param <T> type of the value
+     */
+    public <T> void gauge(String name, Gauge<T> gauge) {
+        replace(name, gauge);
+    }
+
+    /**
+     * Registers the state, call counts and failure rate of a circuit breaker.
+     * @param circuitBreaker circuit breaker to register
+     */
+    public void circuitBreaker(CircuitBreaker circuitBreaker) {
+        replaceAll(null, CircuitBreakerMetrics.ofCircuitBreaker(circuitBreaker));
+    }
+
+    /**
+     * Registers the available permissions and waiting threads of a rate limiter.
+     * @param rateLimiter rate limiter to register
+     */
+    public void rateLimiter(RateLimiter rateLimiter) {
+        replaceAll(null, RateLimiterMetrics.ofRateLimiter(rateLimiter));
+    }
+
+    /**
+     * Starts exposing the metrics as JMX MBeans.
+     */
+    public synchronized void startJmxReporter() {
+        if (jmxReporter == null) {
+            jmxReporter = JmxReporter.forRegistry(registry).inDomain(JMX_DOMAIN).build();
+            jmxReporter.start();
+        }
+    }
+
+    /**
+     * Registers a metric, replacing the metric registered under the same name before, as MetricRegistry.register
+     * throws when a name is taken.
+     */
+    private synchronized void replace(String name, Metric metric) {
+        registry.remove(name);
+        registry.register(name, metric);
+    }
+
+    /**
+     * Registers the metrics of a set like MetricRegistry.registerAll, replacing the ones registered before.
+     * @param prefix prefix of the names, null for none
+     */
+    private void replaceAll(String prefix, MetricSet metrics) {
+        for (Map.Entry<String, Metric> entry : metrics.getMetrics().entrySet()) {
+            String name = prefix == null ? entry.getKey() : MetricRegistry.name(prefix, entry.getKey());
+            if (entry.getValue() instanceof MetricSet) {
+                replaceAll(name, (MetricSet) entry.getValue());
+            } else {
+                replace(name, entry.getValue());
+            }
+        }
+    }
+
+    public MetricRegistry getRegistry() {
+        return registry;
+    }
+}
@@ -1,5 +1,3 @@
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 
 public class Booking {
@@ -9,6 +7,7 @@ public class Booking {
     private long dentistid;
     private long issuance;
     private String time;
+    private long epochMinute;
 
     public Booking(long userid, long requestid, long dentistid, long issuance, String time) {
         setUserid(userid);
@@ -18,13 +17,25 @@ public class Booking {
         setTime(time);
     }
 
+    /**
+     * Creates a booking whose time has already been parsed, e.g. one read back from the RegistryFile.
+     * @param epochMinute the booking time in epoch minutes, see BookingTime
+     */
+    public Booking(long userid, long requestid, long dentistid, long issuance, String time, long epochMinute) {
+        setUserid(userid);
+        setRequestid(requestid);
+        setDentistid(dentistid);
+        setIssuance(issuance);
+        this.time = time;
+        this.epochMinute = epochMinute;
+    }
+
     public long getUserid() {
         return userid;
     }
 
     public void setUserid(long userid) {
-    	String userValidation = String.valueOf(userid); // Converts the long userid to a String to be used for validation
-        if (userValidation.matches("[0-9]{1,6}")) {
+        if (Validation.isValidUserid(userid)) {
             this.userid = userid;
         } else {
             throw new IllegalArgumentException("User id has to  be between one and five digits long");
@@ -36,8 +47,7 @@ public class Booking {
     }
 
     public void setRequestid(long requestid) {
-    	 String requestValidation = String.valueOf(requestid); // Converts the long requestid to a String to be used for validation
-         if (requestValidation.matches("[0-9]{1,5}")) { // This allows there to be up to 99999 requests
+         if (Validation.isValidRequestid(requestid)) { // This allows there to be up to 99999 requests
              this.requestid = requestid;
          } else {
              throw new IllegalArgumentException("Request id has to be between one and five digits long");
@@ -49,8 +59,7 @@ public class Booking {
     }
 
     public void setDentistid(long dentistid) {
-    	 String dentistValidation = String.valueOf(dentistid); // Converts the long dentistid to a String to be used for validation
-         if (dentistValidation.matches("[0-9]{1,4}")) {
+         if (Validation.isValidDentistid(dentistid)) {
              this.dentistid = dentistid;
          } else {
              throw new IllegalArgumentException("Dentist id has to be between one and four digits long");
@@ -62,8 +71,7 @@ public class Booking {
     }
 
     public void setIssuance(long issuance) {
-    	String issuanceValidation = String.valueOf(issuance); // Converts the long issuance to a String to be used for validation, must add L after the issuance when testing for it to work
-        if (issuanceValidation.matches("[0-9]{13}")) {
+        if (Validation.isValidIssuance(issuance)) {
             this.issuance = issuance;
         } else {
             throw new IllegalArgumentException("Issuance has to be thirteen digits long");
@@ -74,21 +82,24 @@ public class Booking {
         return time;
     }
 
+    /**
+     * @return the booking time in epoch minutes, see BookingTime
+     */
+    public long getEpochMinute() {
+        return epochMinute;
+    }
+
     public boolean timeIsValid(String time) {
-        try {
-            LocalDateTime.parse(time, DateTimeFormatter.ofPattern("yyyy-MM-dd H:mm"));
-        } catch (DateTimeParseException e) {
-            return false;
-        }
-        return true;
+        return Validation.isValidTime(time);
     }
 
     public void setTime(String time) {
-        if (timeIsValid(time)) {
-            this.time = time;
-        } else {
+        try {
+            this.epochMinute = BookingTime.parse(time); // Parsed once here so scheduling can compare numbers
+        } catch (DateTimeParseException e) {
             throw new IllegalArgumentException("Time has to be in the format YYYY-MM-DD H:mm (15-16 characters long including spaces, dashes, and colons): " + time);
         }
+        this.time = time;
     }
 
     @Override
@@ -0,0 +1,71 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.Consumer;
+
+/**
+ * BookingStreamHandler creates a Booking for every record in the "bookings" array of a booking registry
+ * while the registry is being parsed.
+ */
+public class BookingStreamHandler extends RecordStreamHandler {
+    private static final Logger LOG = LoggerFactory.getLogger(BookingStreamHandler.class);
+
+    private final Consumer<Booking> bookings;
+
+    private Object userid;
+    private Object requestid;
+    private Object dentistid;
+    private Object issuance;
+    private Object time;
+
+    /**
+     * @param bookings receives each valid booking, invalid bookings are skipped
+     */
+    public BookingStreamHandler(Consumer<Booking> bookings) {
+        super("bookings");
+        this.bookings = bookings;
+    }
+
+    @Override
+    protected void startRecord() {
+        userid = null;
+        requestid = null;
+        dentistid = null;
+        issuance = null;
+        time = null;
+    }
+
+    @Override
+    protected void field(String key, Object value) {
+        switch (key) {
+            case "userid":
+                userid = value;
+                break;
+            case "requestid":
+                requestid = value;
+                break;
+            case "dentistid":
+                dentistid = value;
+                break;
+            case "issuance":
+                issuance = value;
+                break;
+            case "time":
+                time = value;
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    protected void endRecord() {
+        try {
+            // Creating a booking object using the fields from the parsed JSON
+            bookings.accept(new Booking((Long) userid, (Long) requestid, (Long) dentistid, (Long) issuance,
+                    (String) time));
+        } catch (IllegalArgumentException | ClassCastException | NullPointerException e) {
+            LOG.warn("Error when adding new Booking: {}", e.getMessage());
+        }
+    }
+}
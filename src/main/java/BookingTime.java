@@ -0,0 +1,53 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * BookingTime converts booking times between the "yyyy-MM-dd H:mm" format used in messages and epoch minutes,
+ * i.e. the number of minutes since 1970-01-01 00:00 on the local clock of the dental offices.
+ * Booking times are parsed once when a booking is created so scheduling only compares numbers.
+ */
+public final class BookingTime {
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    // Used for bookings without a time, i.e. rejected bookings with the time "none"
+    public static final long NONE = Long.MIN_VALUE;
+
+    private BookingTime() {
+    }
+
+    /**
+     * @param time booking time in the format yyyy-MM-dd H:mm
+     * @return the booking time in epoch minutes
+     * @throws java.time.format.DateTimeParseException thrown when the time has the wrong format
+     */
+    public static long parse(String time) {
+        LocalDateTime dateTime = LocalDateTime.parse(time, Validation.BOOKING_TIME_FORMAT);
+        return dateTime.toEpochSecond(ZoneOffset.UTC) / 60;
+    }
+
+    /**
+     * @param date day of the booking
+     * @param minuteOfDay minutes since midnight
+     * @return the booking time in epoch minutes
+     */
+    public static long of(LocalDate date, int minuteOfDay) {
+        return date.toEpochDay() * MINUTES_PER_DAY + minuteOfDay;
+    }
+
+    /**
+     * @param epochMinute booking time in epoch minutes
+     * @return the day of the booking as the number of days since 1970-01-01
+     */
+    public static long epochDay(long epochMinute) {
+        return Math.floorDiv(epochMinute, MINUTES_PER_DAY);
+    }
+
+    /**
+     * @param epochMinute booking time in epoch minutes
+     * @return minutes since midnight on the day of the booking
+     */
+    public static int minuteOfDay(long epochMinute) {
+        return (int) Math.floorMod(epochMinute, (long) MINUTES_PER_DAY);
+    }
+}
@@ -0,0 +1,92 @@
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Cluster keeps track of the Availability instances that share the BookingRequest traffic, and decides which instance
+ * handles which dental office.
+ *
+ * Every instance announces itself with a retained message on availability/members/[instance id] holding its id, and
+ * registers an empty retained message on the same topic as its last will, so the broker removes it when the instance
+ * disappears. Instances subscribe to availability/members/+ and place the members on a ConsistentHashRing by dentist
+ * id. When the members change, reservations of dental offices that moved to another instance are handed over on
+ * availability/handoff. Availability requests, which any instance can answer, are split by day on the same ring.
+ */
+public class Cluster {
+    public static final String MEMBERS_TOPIC = "availability/members/";
+    public static final String MEMBERS_FILTER = MEMBERS_TOPIC + "+";
+    public static final String HANDOFF_TOPIC = "availability/handoff";
+    // Odd multiplier that moves days to their own key space, far from the dentist ids, see ownsDay
+    private static final long DAY_KEY_SPACE = 0x9E3779B97F4A7C15L;
+
+    private final String instanceId;
+    private final Set<String> members = new TreeSet<>();
+    private volatile ConsistentHashRing ring;
+
+    /**
+     * @param instanceId id of this instance, has to be unique in the cluster
+     */
+    public Cluster(String instanceId) {
+        if (instanceId.isEmpty() || instanceId.contains("/") || instanceId.contains("+") || instanceId.contains("#")) {
+            throw new IllegalArgumentException("Instance id has to be a non-empty topic level: " + instanceId);
+        }
+        this.instanceId = instanceId;
+        members.add(instanceId);
+        ring = new ConsistentHashRing(members);
+    }
+
+    /**
+     * Applies a message from availability/members/+.
+     * @param topic topic of the message, ending in the id of the member
+     * @param payload the member's id when it joins, empty when it has left
+     * @return true when the members have changed
+     */
+    public synchronized boolean memberMessage(String topic, byte[] payload) {
+        String member = topic.substring(MEMBERS_TOPIC.length());
+        boolean changed;
+        if (payload.length > 0) {
+            changed = members.add(new String(payload, StandardCharsets.UTF_8));
+        } else {
+            // A will left behind by an earlier run with the same id does not remove this instance
+            changed = !member.equals(instanceId) && members.remove(member);
+        }
+        if (changed) {
+            ring = new ConsistentHashRing(members);
+        }
+        return changed;
+    }
+
+    /**
+     * @param key e.g. a dentist id
+     * @return true when this instance handles the key
+     */
+    public boolean owns(long key) {
+        return instanceId.equals(ring.owner(key));
+    }
+
+    /**
+     * Days are multiplied into a key space of their own, so a day and the dental office with the same number are not
+     * tied to the same member, and consecutive days spread over the members.
+     * @param date e.g. the first selected date of an availability request
+     * @return true when this instance answers availability requests of the day
+     */
+    public boolean ownsDay(LocalDate date) {
+        return owns(date.toEpochDay() * DAY_KEY_SPACE);
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * @return the topic this instance announces itself on
+     */
+    public String getMemberTopic() {
+        return MEMBERS_TOPIC + instanceId;
+    }
+
+    public Set<String> getMembers() {
+        return ring.getMembers();
+    }
+}
@@ -1,44 +1,190 @@
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Timer;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
 import io.github.resilience4j.ratelimiter.RateLimiter;
-import io.github.resilience4j.ratelimiter.RateLimiterConfig;
 import org.eclipse.paho.client.mqttv3.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.function.Supplier;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Communicator handles the publishing and subscribing for the Availability component.
  * Communicator is based on the circuit-breaker-example: https://git.chalmers.se/dobslaw/circuit-breaker-example
  */
 public class Communicator implements MqttCallback {
+    private final static Logger LOG = LoggerFactory.getLogger(Communicator.class);
+
     //The circuit breaker settings below may need to be changed depending on your computer processing speed
     private final static Duration OPEN_WAIT_TIME = Duration.ofSeconds(2);
     private final static long FAILURE_RATE_THRESHOLD = 10; //Failures over 10% will open the circuit breaker
     private final static int SLIDING_WINDOW_SIZE = 5; //Evaluates per 5 calls
     private final static int MINIMUM_CALLS = 3; // The minimum number of calls that need to be executed per sliding window
     private final static int PERMITTED_CALLS = 5; // The number of calls permitted when the circuit breaker is half open
-    private final static Duration SLOW_CALL_DURATION_THRESHOLD = Duration.ofNanos(800000); // Calls with waiting time above this are considered a failure
+    // Calls with waiting time above this are considered a failure, can be changed with -Davailability.slowCallMicros=5000
+    private final static Duration SLOW_CALL_DURATION_THRESHOLD =
+            Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(Long.getLong("availability.slowCallMicros", 800)));
     private final static long SLOW_CALL_RATE_THRESHOLD = 1; // The circuit breaker will open is over 1% of calls are slow
 
+    // Broker to connect to, can be changed with -Davailability.broker=tcp://broker.example:1883
+    private final static String BROKER = System.getProperty("availability.broker", "tcp://localhost:1883");
+
+    // Number of threads creating schedules for AvailabilityRequests, can be changed with -Davailability.workers=4
+    private final static int AVAILABILITY_WORKERS = Integer.getInteger("availability.workers", 1);
+
+    // Number of threads deciding BookingRequests, can be changed with -Davailability.bookingWorkers=8
+    private final static int BOOKING_WORKERS = Integer.getInteger("availability.bookingWorkers",
+            Runtime.getRuntime().availableProcessors());
+
+    // Collecting BookingRequests for this many milliseconds and deciding them as one batch, 0 decides each on its own.
+    // Can be changed with -Davailability.batchWindowMillis=5 and -Davailability.batchSize=256
+    private final static long BATCH_WINDOW_MILLIS = Long.getLong("availability.batchWindowMillis", 0);
+    private final static int BATCH_SIZE = Integer.getInteger("availability.batchSize", 256);
+
+    // Requests of a topic waiting for a worker before further ones are shed, can be changed with
+    // -Davailability.maxQueued=10000
+    private final static int MAX_QUEUED = Integer.getInteger("availability.maxQueued", 10000);
+
+    // Requests admitted per second, 0 does not limit them.
+    // Can be changed with -Davailability.bookingRate=5000 and -Davailability.availabilityRate=500
+    private final static int BOOKING_RATE = Integer.getInteger("availability.bookingRate", 0);
+    private final static int AVAILABILITY_RATE = Integer.getInteger("availability.availabilityRate", 0);
+
+    // BookingRequests issued longer ago than this are rejected without being decided, 0 decides them however old.
+    // Can be changed with -Davailability.maxRequestAgeMillis=30000
+    private final static long MAX_REQUEST_AGE_MILLIS = Long.getLong("availability.maxRequestAgeMillis", 0);
+
+    // File the registries are kept in, so they can be answered from right after a restart, not kept by default.
+    // Can be set with -Davailability.registryFile=registries.bin
+    private final static String REGISTRY_FILE = System.getProperty("availability.registryFile");
+    private final static long REGISTRY_FILE_DELAY_MILLIS = 1000; // Registry changes within this time are written once
+
+    // Directory of the decision log, which lets accepted bookings stay reserved across a crash, not kept by default.
+    // Can be set with -Davailability.decisionLog=decisions
+    private final static String DECISION_LOG = System.getProperty("availability.decisionLog");
+    private final static long DECISION_LOG_SEGMENT_BYTES = 4 * 1024 * 1024; // Size of a decision log file
+
+    // Several instances can split the BookingRequests between them by dental office, see Cluster.
+    // Turned on with -Davailability.cluster=true, each instance needs its own -Davailability.instanceId=a
+    private final static boolean CLUSTER = Boolean.getBoolean("availability.cluster");
+    private final static String INSTANCE_ID = System.getProperty("availability.instanceId",
+            UUID.randomUUID().toString().substring(0, 8));
+
+    private final static String NEAREST_FREE_SLOTS_TOPIC = "nearest-free-slots"; // Answers NearestAvailabilityRequests
+
+    private final static int QOS = 1;
+    private final static int MAX_INFLIGHT = 100; // Publishes that can be waiting for the broker at the same time
+    private final static long PUBLISH_TIMEOUT_SECONDS = 10; // Longest wait for a free place in the in-flight window
+
     private final static ExecutorService THREAD_POOL = Executors.newSingleThreadExecutor();
 
+    // BookingRequests for the same dental office are decided one at a time and in order, different offices in parallel
+    private final static StripedExecutor BOOKING_POOL = new StripedExecutor(BOOKING_WORKERS, "booking");
+
+    // AvailabilityRequests are answered off the MQTT callback thread, so they do not hold up registry updates
+    private final static ThreadPoolExecutor AVAILABILITY_POOL = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>());
+
+    // Replies to shed requests are published off the MQTT callback thread, which also has to handle
+    // deliveryComplete to free places in the in-flight window. They compete with the answers for that window, so at
+    // most MAX_QUEUED of them wait for it and further shed requests get no reply, see queueReply
+    private final static ThreadPoolExecutor REJECTION_POOL = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAX_QUEUED), task -> {
+                Thread thread = new Thread(task, "rejections");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // Writes the registry file off the MQTT callback thread
+    private final static ScheduledExecutorService REGISTRY_FILE_WRITER = Executors.newSingleThreadScheduledExecutor(
+            task -> {
+                Thread thread = new Thread(task, "registry-file");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     private final static Filter SERVICE = new Filter();
 
-    private Supplier<ReceivedBooking> service;
+    private final static AvailabilityMetrics METRICS = new AvailabilityMetrics();
 
     private final CircuitBreaker circuitBreaker;
 
-    private final IMqttClient middleware;
+    private final MqttAsyncClient middleware;
+
+    private final Cluster cluster; // Only used in cluster mode
+    // Booking workers decide under the read lock and the members change under the write lock, so a request is never
+    // reserved here after its dental office has been handed over to another member
+    private final ReadWriteLock membershipLock = new ReentrantReadWriteLock();
+
+    private final RequestBatcher<DeliveredBooking> bookingBatcher; // Only used when batching is turned on
+
+    private final RegistryFile registryFile = REGISTRY_FILE != null ? new RegistryFile(Paths.get(REGISTRY_FILE)) : null;
+    private final AtomicBoolean registryFileWritePending = new AtomicBoolean();
+
+    private final AdmissionControl admissionControl = new AdmissionControl(MAX_QUEUED, MAX_REQUEST_AGE_MILLIS);
+
+    // Publishes that have been sent but not acknowledged by the broker, see dump and deliveryComplete
+    private final Semaphore publishWindow = new Semaphore(MAX_INFLIGHT);
+    private final Set<Object> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong undelivered = new AtomicLong();
+
+    // Counts the lost connections. Message ids start over on a new connection, so a request that arrived on an
+    // earlier one is not acknowledged anymore, see DeliveredBooking
+    private final AtomicInteger lostConnections = new AtomicInteger();
 
     public Communicator(String brokerstring, String userid) throws MqttException {
-        middleware = new MqttClient(brokerstring, userid);
-        middleware.connect();
+        this(brokerstring, userid, null);
+    }
+
+    /**
+     * @param brokerstring URI of the broker
+     * @param userid MQTT client id
+     * @param cluster the cluster this instance shares the BookingRequests with, or null to handle all of them
+     * @throws MqttException thrown when the connection to the broker cannot be made
+     */
+    public Communicator(String brokerstring, String userid, Cluster cluster) throws MqttException {
+        this.cluster = cluster;
+        middleware = new MqttAsyncClient(brokerstring, userid);
+        // BookingRequests are acknowledged once they are answered, not when they have only been queued, see acknowledge
+        middleware.setManualAcks(true);
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setMaxInflight(MAX_INFLIGHT);
+        if (cluster != null) {
+            // The broker removes this instance from the cluster when it disappears without leaving
+            options.setWill(cluster.getMemberTopic(), new byte[0], QOS, true);
+        }
         middleware.setCallback(this);
+        middleware.connect(options).waitForCompletion();
 
         CircuitBreakerConfig config = CircuitBreakerConfig.custom()
                 .failureRateThreshold(FAILURE_RATE_THRESHOLD)
@@ -50,23 +196,209 @@ public class Communicator implements MqttCallback {
                 .build();
 
         circuitBreaker = CircuitBreaker.of("availability", config);
-        service = CircuitBreaker.decorateSupplier(circuitBreaker, SERVICE);
+        bookingBatcher = BATCH_WINDOW_MILLIS > 0
+                ? new RequestBatcher<>(BATCH_WINDOW_MILLIS, BATCH_SIZE, this::handleBookingBatch, "booking-batch")
+                : null;
+        if (BOOKING_RATE > 0) {
+            admissionControl.limit("BookingRequest", BOOKING_RATE);
+        }
+        if (AVAILABILITY_RATE > 0) {
+            admissionControl.limit("AvailabilityRequest", AVAILABILITY_RATE);
+        }
+        registerMetrics();
+    }
+
+    /**
+     * Registers the circuit breaker, the rate limiters and the gauges that are read when the metrics are reported.
+     */
+    private void registerMetrics() {
+        METRICS.circuitBreaker(circuitBreaker);
+        for (RateLimiter rateLimiter : admissionControl.getRateLimiters()) {
+            METRICS.rateLimiter(rateLimiter);
+        }
+        METRICS.gauge("registry.dentists", (Gauge<Integer>) () -> SERVICE.getRegistries().getDentists().size());
+        METRICS.gauge("registry.bookings", (Gauge<Integer>) () -> SERVICE.getRegistries().getBookings().size());
+        METRICS.gauge("registry.reservations", (Gauge<Integer>) () -> SERVICE.getReservationLedger().size());
+        METRICS.gauge("cache.hits", (Gauge<Long>) () -> SERVICE.getAvailabilityCache().getHits());
+        METRICS.gauge("cache.misses", (Gauge<Long>) () -> SERVICE.getAvailabilityCache().getMisses());
+        METRICS.gauge("cache.size", (Gauge<Integer>) () -> SERVICE.getAvailabilityCache().size());
+        METRICS.gauge("dedupe.hits", (Gauge<Long>) () -> SERVICE.getDecisionCache().getHits());
+        METRICS.gauge("dedupe.hitRate", (Gauge<Double>) () -> SERVICE.getDecisionCache().getHitRate());
+        METRICS.gauge("dedupe.size", (Gauge<Integer>) () -> SERVICE.getDecisionCache().size());
+        METRICS.gauge("queue.booking", (Gauge<Integer>) BOOKING_POOL::getQueuedTasks);
+        METRICS.gauge("queue.availability", (Gauge<Integer>) () -> AVAILABILITY_POOL.getQueue().size());
+        METRICS.gauge("queue.rejections", (Gauge<Integer>) () -> REJECTION_POOL.getQueue().size());
+        if (bookingBatcher != null) {
+            METRICS.gauge("queue.batch", (Gauge<Integer>) bookingBatcher::getQueuedRequests);
+        }
+        METRICS.gauge("publish.inFlight", (Gauge<Integer>) inFlight::size);
+        METRICS.gauge("publish.delivered", (Gauge<Long>) delivered::get);
+        METRICS.gauge("publish.undelivered", (Gauge<Long>) undelivered::get);
     }
 
     public static void main(String[] args) {
         try {
-            Communicator c = new Communicator("tcp://localhost:1883", "bookings-filter");
+            SERVICE.setAvailabilityWorkers(AVAILABILITY_WORKERS);
+            Cluster cluster = CLUSTER ? new Cluster(INSTANCE_ID) : null;
+            Communicator c = new Communicator(BROKER,
+                    cluster != null ? "bookings-filter-" + cluster.getInstanceId() : "bookings-filter", cluster);
+            c.restoreRegistries();
+            c.openDecisionLog();
+            METRICS.startJmxReporter();
+            c.joinCluster();
             c.subscribeToMessages("BookingRegistry");
+            c.subscribeToMessages("BookingRegistryDelta");
             c.subscribeToMessages("BookingRequest");
             c.subscribeToMessages("Dentists");
             c.subscribeToMessages("AvailabilityRequest");
+            c.subscribeToMessages("NearestAvailabilityRequest");
         } catch (Exception e) {
-            e.printStackTrace();
+            LOG.error("Availability could not be started", e);
         } catch(Throwable throwable) {
-            throwable.printStackTrace();
+            LOG.error("Availability could not be started", throwable);
     }
 }
 
+    /**
+     * Subscribes to the members and hand-overs of the cluster and announces this instance, before the requests are
+     * subscribed to, so requests are only handled once the other members are known.
+     */
+    private void joinCluster() {
+        if (cluster == null) {
+            return;
+        }
+        LOG.info("Joining the cluster as {}", cluster.getInstanceId());
+        subscribeToMessages(Cluster.MEMBERS_FILTER);
+        subscribeToMessages(Cluster.HANDOFF_TOPIC);
+        THREAD_POOL.submit(this::announceMember);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::leaveCluster, "cluster-leave"));
+    }
+
+    /**
+     * Publishes the retained message that makes this instance a member of the cluster.
+     */
+    private void announceMember() {
+        try {
+            publishMember(cluster.getInstanceId().getBytes(StandardCharsets.UTF_8));
+        } catch (MqttException e) {
+            LOG.error("Could not join the cluster as {}", cluster.getInstanceId(), e);
+        }
+    }
+
+    /**
+     * Leaves the cluster when the component is stopped. The other members take over the dental offices of this
+     * instance as soon as they see it leave, so it stops taking requests, decides the ones it has already taken, and
+     * then hands its reservations over.
+     */
+    private void leaveCluster() {
+        try {
+            publishMember(new byte[0]);
+            middleware.unsubscribe(new String[]{"BookingRequest", "AvailabilityRequest", "NearestAvailabilityRequest"})
+                    .waitForCompletion(TimeUnit.SECONDS.toMillis(PUBLISH_TIMEOUT_SECONDS));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(PUBLISH_TIMEOUT_SECONDS);
+            while (getQueuedBookings() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            BOOKING_POOL.shutdown(PUBLISH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            String reservations = SERVICE.handOffReservations(dentistid -> true);
+            if (reservations != null) {
+                dump(Cluster.HANDOFF_TOPIC, reservations);
+            }
+            // Waits for the broker to acknowledge what has been published
+            middleware.disconnect(TimeUnit.SECONDS.toMillis(PUBLISH_TIMEOUT_SECONDS)).waitForCompletion();
+            LOG.info("Left the cluster");
+        } catch (MqttException e) {
+            LOG.error("Could not leave the cluster, the broker removes this instance when the connection closes", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Publishes the retained membership message of this instance, an empty one removes it from the cluster.
+     */
+    private void publishMember(byte[] payload) throws MqttException {
+        MqttMessage member = new MqttMessage(payload);
+        member.setQos(QOS);
+        member.setRetained(true);
+        publish(cluster.getMemberTopic(), member);
+    }
+
+    /**
+     * Moves the reservations of dental offices another member handles after the members have changed.
+     * Runs on the MQTT callback thread, so the ring and the reservations change before the next request is handled,
+     * and publishes the hand-over from the subscribing thread.
+     */
+    private void rebalance() {
+        LOG.info("Cluster members changed: {}", cluster.getMembers());
+        String reservations = SERVICE.handOffReservations(dentistid -> !cluster.owns(dentistid));
+        if (reservations != null) {
+            THREAD_POOL.submit(() -> {
+                try {
+                    dump(Cluster.HANDOFF_TOPIC, reservations);
+                } catch (MqttException e) {
+                    LOG.error("Could not hand over reservations", e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Answers requests from the registries in the registry file until new registry messages arrive.
+     */
+    private void restoreRegistries() {
+        if (registryFile == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        RegistrySnapshot snapshot = registryFile.read();
+        if (snapshot != null) {
+            SERVICE.restoreRegistries(snapshot);
+            LOG.info("Restored {} dental offices and {} bookings from {} in {} ms", snapshot.getDentists().size(),
+                    snapshot.getBookings().size(), registryFile.getPath(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Rebuilds the reservations from the decision log and logs every decision from now on.
+     * @throws IOException thrown when the decision log cannot be opened or read
+     */
+    private void openDecisionLog() throws IOException {
+        if (DECISION_LOG == null) {
+            return;
+        }
+        DecisionLog decisionLog = new DecisionLog(Paths.get(DECISION_LOG), DECISION_LOG_SEGMENT_BYTES,
+                Filter.RESERVATION_TTL_MILLIS);
+        SERVICE.setDecisionLog(decisionLog);
+        METRICS.gauge("queue.decisionLog", (Gauge<Integer>) decisionLog::getQueuedDecisions);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                decisionLog.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "decision-log-close"));
+    }
+
+    /**
+     * Writes the current registries to the registry file after a short delay, so a burst of registry messages is
+     * written once.
+     */
+    private void writeRegistryFile() {
+        if (registryFile == null || !registryFileWritePending.compareAndSet(false, true)) {
+            return;
+        }
+        REGISTRY_FILE_WRITER.schedule(() -> {
+            registryFileWritePending.set(false);
+            try {
+                registryFile.write(SERVICE.getRegistries());
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Could not write the registries to {}", registryFile.getPath(), e);
+            }
+        }, REGISTRY_FILE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * Subscribes to messages in a thread pool.
      * @param fromTopic
@@ -74,11 +406,11 @@ public class Communicator implements MqttCallback {
     private void subscribeToMessages(String fromTopic) {
         THREAD_POOL.submit(() -> {
             try {
-                middleware.subscribe(fromTopic);
+                middleware.subscribe(fromTopic, QOS).waitForCompletion();
             } catch (MqttSecurityException e) {
-                e.printStackTrace();
+                LOG.error("Not allowed to subscribe to {}", fromTopic, e);
             } catch (MqttException e) {
-                e.printStackTrace();
+                LOG.error("Could not subscribe to {}", fromTopic, e);
             }
         });
     }
@@ -86,63 +418,414 @@ public class Communicator implements MqttCallback {
     /**
      * Method is called when a subscription receives a message.
      * It does different things depending on the topic received.
+     * Registry messages are applied on the calling thread, requests are handed over to the worker pools.
+     * A BookingRequest is acknowledged to the broker once it has been answered, every other message when this method
+     * returns.
      * @param topic
      * @param incoming
      * @throws Exception
      */
     @Override
     public void messageArrived(String topic, MqttMessage incoming) throws Exception {
-        try {
-            ReceivedBooking receivedBooking = null;
-            ArrayList<Schedule> schedules = new ArrayList<>();
-
+        METRICS.received(topic).inc();
+        boolean answeredLater = false; // Acknowledged by the thread answering it
+        try (Timer.Context parsing = METRICS.parse(topic).time()) {
             switch (topic) {
                 case "BookingRequest":
-                    SERVICE.makeReceivedBooking(incoming);
-                    receivedBooking = service.get(); // Could be a successful or failed booking
-                    System.out.println("State after receivedBooking:" + circuitBreaker.getState());
-                    if (!receivedBooking.getTime().equals("none")) {
-                        dump("SuccessfulBooking", receivedBooking.toString());
+                    ReceivedBooking requestBooking = SERVICE.makeReceivedBooking(incoming);
+                    if (cluster != null && !cluster.owns(requestBooking.getDentistid())) {
+                        LOG.debug("Skipping booking {} of another cluster member", requestBooking.getRequestid());
+                        break;
+                    }
+                    AdmissionControl.Decision bookingAdmission = admissionControl.admit(topic, requestBooking,
+                            getQueuedBookings(), System.currentTimeMillis());
+                    DeliveredBooking deliveredBooking = new DeliveredBooking(requestBooking, incoming,
+                            lostConnections.get());
+                    if (bookingAdmission != AdmissionControl.Decision.ADMITTED) {
+                        // A request that gets no reply is acknowledged when this method returns
+                        answeredLater = queueReply(topic, () -> rejectBookings(
+                                Collections.singletonList(deliveredBooking), bookingAdmission.name()));
+                    } else if (bookingBatcher != null) {
+                        bookingBatcher.add(deliveredBooking);
+                        answeredLater = true;
                     } else {
-                        dump("BookingResponse", receivedBooking.getBookingResponse()); // Time should be none
+                        BOOKING_POOL.execute(requestBooking.getDentistid(),
+                                () -> handleBookingRequest(deliveredBooking));
+                        answeredLater = true;
                     }
                     break;
                 case "BookingRegistry":
                     SERVICE.makeBookingArray(incoming);
-                    System.out.println("We have received an updated booking registry.");
+                    writeRegistryFile();
+                    LOG.info("We have received an updated booking registry.");
+                    break;
+                case "BookingRegistryDelta":
+                    SERVICE.applyBookingDelta(incoming);
+                    writeRegistryFile();
+                    LOG.debug("We have received changes to the booking registry.");
                     break;
                 case "Dentists":
                     SERVICE.makeDentistArray(incoming);
-                    System.out.println("We have received an updated dentist registry.");
+                    writeRegistryFile();
+                    LOG.info("We have received an updated dentist registry.");
                     break;
                 case "AvailabilityRequest":
-                    SERVICE.setSelectedDate(incoming);
-                    System.out.println("We have received a selected date.");
-                    schedules = SERVICE.getAvailability();
-                    dump("free-slots", "{ \"schedules\": " + schedules.toString() + "}");
+                    SelectedDates selectedDates = SERVICE.makeSelectedDates(incoming);
+                    LOG.debug("We have received a selected date: {}", selectedDates);
+                    // Every member has all registries, so availability is split by day instead of by dental office:
+                    // the member owning the first selected date answers
+                    if (cluster != null && !cluster.ownsDay(selectedDates.getFirstDate())) {
+                        break;
+                    }
+                    AdmissionControl.Decision availabilityAdmission = admissionControl.admit(topic,
+                            AVAILABILITY_POOL.getQueue().size());
+                    if (availabilityAdmission != AdmissionControl.Decision.ADMITTED) {
+                        queueReply(topic, () -> rejectAvailability(topic, selectedDates.getEncoding().getTopic(),
+                                selectedDates.getFirstDate(), selectedDates.getLastDate(),
+                                availabilityAdmission.name()));
+                    } else {
+                        AVAILABILITY_POOL.execute(() -> handleAvailabilityRequest(selectedDates));
+                    }
+                    break;
+                case "NearestAvailabilityRequest":
+                    NearestOffices nearestOffices = SERVICE.makeNearestOffices(incoming);
+                    LOG.debug("We have received a nearest availability request: {}", nearestOffices);
+                    if (cluster != null && !cluster.ownsDay(nearestOffices.getDate())) { // Split by day too
+                        break;
+                    }
+                    AdmissionControl.Decision nearestAdmission = admissionControl.admit(topic,
+                            AVAILABILITY_POOL.getQueue().size());
+                    if (nearestAdmission != AdmissionControl.Decision.ADMITTED) {
+                        queueReply(topic, () -> rejectAvailability(topic, NEAREST_FREE_SLOTS_TOPIC,
+                                nearestOffices.getDate(), nearestOffices.getDate(), nearestAdmission.name()));
+                    } else {
+                        AVAILABILITY_POOL.execute(() -> handleNearestAvailabilityRequest(nearestOffices));
+                    }
+                    break;
+                case Cluster.HANDOFF_TOPIC:
+                    // Hand-overs of this instance arrive here too, it does not handle their dental offices anymore
+                    int takenOver = SERVICE.takeOverReservations(incoming, cluster::owns);
+                    if (takenOver > 0) {
+                        LOG.info("Took over {} reservations", takenOver);
+                    }
                     break;
                 default:
-                    System.out.println("Topic not found");
+                    if (cluster != null && topic.startsWith(Cluster.MEMBERS_TOPIC)) {
+                        membershipLock.writeLock().lock();
+                        try {
+                            if (cluster.memberMessage(topic, incoming.getPayload())) {
+                                rebalance();
+                            }
+                        } finally {
+                            membershipLock.writeLock().unlock();
+                        }
+                    } else {
+                        LOG.warn("Topic not found: {}", topic);
+                    }
             }
 
-            System.out.println("State of circuit breaker: " + circuitBreaker.getState());
+            LOG.debug("State of circuit breaker: {}", circuitBreaker.getState());
         } catch (RuntimeException e) {
-            System.err.println("State when there is a runtime exception: " + circuitBreaker.getState());
-            if (circuitBreaker.getState().equals(CircuitBreaker.State.OPEN)) {
-                System.err.println("Request rejected!");
-            } else {
-                System.err.println("Service has failed!");
+            handleRuntimeException(e);
+        } finally {
+            if (!answeredLater) {
+                acknowledge(incoming);
             }
         }
     }
 
+    /**
+     * Tells the broker that a message has been handled. Until then the broker counts it as in flight, and it is lost
+     * with the connection instead of being dropped as handled.
+     * @param incoming message received in messageArrived
+     */
+    private void acknowledge(MqttMessage incoming) {
+        try {
+            middleware.messageArrivedComplete(incoming.getId(), incoming.getQos());
+        } catch (MqttException e) {
+            LOG.warn("Could not acknowledge message {}", incoming.getId(), e);
+        }
+    }
+
+    /**
+     * Acknowledges a booking request that has been answered, once, and not when the connection it arrived on has been
+     * lost. Its id may already belong to another message then, and the broker no longer waits for it.
+     * @param deliveredBooking booking request that has been answered
+     */
+    private void acknowledge(DeliveredBooking deliveredBooking) {
+        if (deliveredBooking.getConnection() == lostConnections.get() && deliveredBooking.markAcknowledged()) {
+            acknowledge(deliveredBooking.getMessage());
+        }
+    }
+
+    /**
+     * Decides a booking request through the circuit breaker and publishes the result, runs on a booking worker.
+     * The request is acknowledged once it has been answered. One whose answer could not be published is left
+     * unacknowledged, as it was when requests were answered in messageArrived.
+     * @param deliveredBooking booking request created from a BookingRequest message
+     */
+    private void handleBookingRequest(DeliveredBooking deliveredBooking) {
+        ReceivedBooking requestBooking = deliveredBooking.getRequest();
+        try {
+            // Could be a successful or failed booking, null when the dental office has moved to another member
+            ReceivedBooking receivedBooking = null;
+            membershipLock.readLock().lock();
+            try (Timer.Context deciding = METRICS.decide("BookingRequest").time()) {
+                if (ownsDentalOffice(requestBooking)) {
+                    receivedBooking = circuitBreaker.executeSupplier(() -> SERVICE.checkAvailability(requestBooking));
+                }
+            } finally {
+                membershipLock.readLock().unlock();
+            }
+            if (receivedBooking == null) {
+                rejectBookings(Collections.singletonList(deliveredBooking), "MOVED");
+                return;
+            }
+            LOG.debug("State after receivedBooking: {}", circuitBreaker.getState());
+            SERVICE.awaitDecisionsLogged(); // Outside the circuit breaker, a sync is slower than a decision
+            publishDecision(receivedBooking);
+            acknowledge(deliveredBooking);
+        } catch (MqttException e) {
+            LOG.error("Could not publish booking {}", requestBooking.getRequestid(), e);
+        } catch (CallNotPermittedException e) {
+            LOG.warn("Request rejected!");
+            rejectBookings(Collections.singletonList(deliveredBooking), "CIRCUIT_OPEN");
+        } catch (RuntimeException e) {
+            handleRuntimeException(e);
+            acknowledge(deliveredBooking);
+        }
+    }
+
+    /**
+     * Decides a batch of booking requests through the circuit breaker and publishes the results, runs on the batching
+     * thread. The requests are acknowledged like in handleBookingRequest.
+     * @param deliveredBookings booking requests collected by the batcher
+     */
+    private void handleBookingBatch(List<DeliveredBooking> deliveredBookings) {
+        try {
+            List<ReceivedBooking> receivedBookings;
+            List<DeliveredBooking> owned = new ArrayList<>(deliveredBookings.size());
+            List<DeliveredBooking> moved = new ArrayList<>(); // Dental offices that have moved to another member
+            membershipLock.readLock().lock();
+            try (Timer.Context deciding = METRICS.decide("BookingRequest").time()) {
+                for (DeliveredBooking deliveredBooking : deliveredBookings) {
+                    if (ownsDentalOffice(deliveredBooking.getRequest())) {
+                        owned.add(deliveredBooking);
+                    } else {
+                        moved.add(deliveredBooking);
+                    }
+                }
+                // In the order checkAvailability decides them, so every decision answers the request at its index
+                owned.sort(Comparator.comparingLong(owner -> owner.getRequest().getIssuance()));
+                List<ReceivedBooking> requestBookings = new ArrayList<>(owned.size());
+                for (DeliveredBooking deliveredBooking : owned) {
+                    requestBookings.add(deliveredBooking.getRequest());
+                }
+                receivedBookings = requestBookings.isEmpty() ? Collections.<ReceivedBooking>emptyList()
+                        : decideBatch(requestBookings);
+            } finally {
+                membershipLock.readLock().unlock();
+            }
+            if (!moved.isEmpty()) {
+                rejectBookings(moved, "MOVED");
+            }
+            LOG.debug("State after batch of {} bookings: {}", receivedBookings.size(), circuitBreaker.getState());
+
+            SERVICE.awaitDecisionsLogged();
+            for (int i = 0; i < receivedBookings.size(); i++) {
+                publishDecision(receivedBookings.get(i));
+                acknowledge(owned.get(i));
+            }
+        } catch (MqttException e) {
+            LOG.error("Could not publish batch of {} bookings", deliveredBookings.size(), e);
+        } catch (CallNotPermittedException e) {
+            LOG.warn("Request rejected!");
+            rejectBookings(deliveredBookings, "CIRCUIT_OPEN");
+        } catch (RuntimeException e) {
+            handleRuntimeException(e);
+            for (DeliveredBooking deliveredBooking : deliveredBookings) {
+                acknowledge(deliveredBooking);
+            }
+        }
+    }
+
+    /**
+     * Decides a batch through the circuit breaker, recording one call per request instead of one for the whole batch.
+     * Each call takes its share of the batch's time, so the slow-call threshold and the sliding window count requests
+     * the same way with and without batching.
+     * @param requestBookings booking requests in issuance order
+     * @return the decisions, in the same order
+     * @throws CallNotPermittedException thrown when the circuit breaker is open
+     */
+    private List<ReceivedBooking> decideBatch(List<ReceivedBooking> requestBookings) {
+        circuitBreaker.acquirePermission();
+        long start = System.nanoTime();
+        try {
+            List<ReceivedBooking> receivedBookings = SERVICE.checkAvailability(requestBookings);
+            long perRequest = (System.nanoTime() - start) / requestBookings.size();
+            for (int i = 0; i < requestBookings.size(); i++) {
+                circuitBreaker.onSuccess(perRequest, TimeUnit.NANOSECONDS);
+            }
+            return receivedBookings;
+        } catch (RuntimeException e) {
+            long perRequest = (System.nanoTime() - start) / requestBookings.size();
+            for (int i = 0; i < requestBookings.size(); i++) {
+                circuitBreaker.onError(perRequest, TimeUnit.NANOSECONDS, e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Checks again on the booking worker whether this instance handles the dental office of a request. The members may
+     * have changed while the request was queued, and the office's reservations been handed over. Call it holding the
+     * read lock of membershipLock.
+     * @param requestBooking booking request
+     * @return true when not in cluster mode or this instance handles the dental office
+     */
+    private boolean ownsDentalOffice(ReceivedBooking requestBooking) {
+        return cluster == null || cluster.owns(requestBooking.getDentistid());
+    }
+
+    /**
+     * Publishes rejections to BookingResponse for booking requests that are shed without being decided, so the users
+     * get an answer right away instead of waiting for one that never comes. Each request is acknowledged once its
+     * rejection has been published.
+     * @param deliveredBookings booking requests that are shed
+     * @param reason why the requests are shed, counted in the metrics
+     */
+    private void rejectBookings(List<DeliveredBooking> deliveredBookings, String reason) {
+        METRICS.shed("BookingRequest", reason).inc(deliveredBookings.size());
+        LOG.debug("Shed {} bookings: {}", deliveredBookings.size(), reason);
+        try {
+            for (DeliveredBooking deliveredBooking : deliveredBookings) {
+                ReceivedBooking requestBooking = deliveredBooking.getRequest();
+                publishDecision(new ReceivedBooking(requestBooking.getUserid(), requestBooking.getRequestid(), "none"));
+                acknowledge(deliveredBooking);
+            }
+        } catch (MqttException e) {
+            LOG.error("Could not publish rejection of {} bookings", deliveredBookings.size(), e);
+        }
+    }
+
+    /**
+     * Publishes a busy reply for an availability request that is shed without being answered, so the user knows to
+     * ask again instead of waiting for free slots that never come.
+     * @param topic topic the request arrived on
+     * @param responseTopic topic the free slots would have been published to
+     * @param firstDate first date of the request
+     * @param lastDate last date of the request
+     * @param reason why the request is shed, counted in the metrics
+     */
+    private void rejectAvailability(String topic, String responseTopic, LocalDate firstDate, LocalDate lastDate,
+                                    String reason) {
+        METRICS.shed(topic, reason).inc();
+        LOG.debug("Shed {} for {} to {}: {}", topic, firstDate, lastDate, reason);
+        try {
+            dump(responseTopic, JsonWriter.forThread().busy(reason, firstDate, lastDate));
+        } catch (MqttException e) {
+            LOG.error("Could not publish busy reply to {}", topic, e);
+        }
+    }
+
+    /**
+     * Queues the reply to a shed request for the rejection thread. When MAX_QUEUED replies are already waiting for the
+     * in-flight window, the request gets no reply and is counted as shed with reason REPLIES_FULL instead.
+     * @param topic topic the request arrived on
+     * @param reply publishes the reply
+     * @return true when the reply has been queued
+     */
+    private boolean queueReply(String topic, Runnable reply) {
+        try {
+            REJECTION_POOL.execute(reply);
+            return true;
+        } catch (RejectedExecutionException e) {
+            METRICS.shed(topic, "REPLIES_FULL").inc();
+            LOG.debug("Shed {} without a reply, {} replies are waiting", topic, MAX_QUEUED);
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of booking requests waiting for a booking worker or for their batch
+     */
+    private int getQueuedBookings() {
+        return BOOKING_POOL.getQueuedTasks() + (bookingBatcher != null ? bookingBatcher.getQueuedRequests() : 0);
+    }
+
+    /**
+     * Publishes an accepted booking to SuccessfulBooking and a rejected one to BookingResponse.
+     * @param receivedBooking decided booking
+     * @throws MqttException
+     */
+    private void publishDecision(ReceivedBooking receivedBooking) throws MqttException {
+        if (!receivedBooking.getTime().equals("none")) {
+            METRICS.decisions("accepted").inc();
+            dump("SuccessfulBooking", JsonWriter.forThread().successfulBooking(receivedBooking));
+        } else {
+            METRICS.decisions("rejected").inc();
+            dump("BookingResponse", JsonWriter.forThread().bookingResponse(receivedBooking)); // Time should be none
+        }
+    }
+
+    /**
+     * Publishes the free slots of the selected dates, runs on the availability worker.
+     * @param selectedDates dates selected in an AvailabilityRequest message
+     */
+    private void handleAvailabilityRequest(SelectedDates selectedDates) {
+        try {
+            byte[] freeSlots;
+            try (Timer.Context deciding = METRICS.decide("AvailabilityRequest").time()) {
+                freeSlots = SERVICE.getFreeSlots(selectedDates);
+            }
+            dump(selectedDates.getEncoding().getTopic(), freeSlots);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Availability cache hits: {}, misses: {}", SERVICE.getAvailabilityCache().getHits(),
+                        SERVICE.getAvailabilityCache().getMisses());
+            }
+        } catch (MqttException e) {
+            LOG.error("Could not publish free slots of {}", selectedDates, e);
+        } catch (RuntimeException e) {
+            handleRuntimeException(e);
+        }
+    }
+
+    /**
+     * Publishes the free slots of the nearest dental offices with a free time slot, runs on the availability worker.
+     * @param nearestOffices point, date and number of offices selected in a NearestAvailabilityRequest message
+     */
+    private void handleNearestAvailabilityRequest(NearestOffices nearestOffices) {
+        try {
+            byte[] freeSlots;
+            try (Timer.Context deciding = METRICS.decide("NearestAvailabilityRequest").time()) {
+                freeSlots = SERVICE.getNearestFreeSlots(nearestOffices);
+            }
+            dump(NEAREST_FREE_SLOTS_TOPIC, freeSlots);
+        } catch (MqttException e) {
+            LOG.error("Could not publish free slots of the {}", nearestOffices, e);
+        } catch (RuntimeException e) {
+            handleRuntimeException(e);
+        }
+    }
+
+    private void handleRuntimeException(RuntimeException e) {
+        LOG.debug("State when there is a runtime exception: {}", circuitBreaker.getState());
+        if (circuitBreaker.getState().equals(CircuitBreaker.State.OPEN)) {
+            LOG.warn("Request rejected!");
+        } else {
+            LOG.error("Service has failed!", e);
+        }
+    }
+
     /**
      * When a connection is lost, try to reconnect.
      * @param throwable
      */
     @Override
     public void connectionLost(Throwable throwable) {
-        System.out.println("Connection lost!");
+        LOG.warn("Connection lost!", throwable);
+        lostConnections.incrementAndGet();
+        releaseInFlight();
         long startTime = System.currentTimeMillis();
         long elapsedTime = 0;
 
@@ -150,59 +833,155 @@ public class Communicator implements MqttCallback {
             // reestablish lost connection
             try {
                 Thread.sleep(8000); //original number is 3000
-                System.out.println("Reconnecting..");
+                LOG.info("Reconnecting..");
                 middleware.reconnect();
                 elapsedTime = (new Date()).getTime() - startTime;
 
             } catch (Exception e) {
-                e.printStackTrace();
+                LOG.warn("Reconnecting failed", e);
             }
         }
         if (middleware.isConnected() == false) {
             try {
-                System.out.println("Tried reconnecting for 1 minute, now disconnecting..");
-                middleware.unsubscribe(new String[]{"BookingRegistry", "Dentists", "BookingRequest", "AvailabilityRequest", "SelectedDate"});
-                middleware.disconnect();
+                LOG.error("Tried reconnecting for 1 minute, now disconnecting..");
+                middleware.unsubscribe(new String[]{"BookingRegistry", "BookingRegistryDelta", "Dentists", "BookingRequest", "AvailabilityRequest", "NearestAvailabilityRequest", "SelectedDate"});
+                middleware.disconnect().waitForCompletion();
                 middleware.close();
-                System.out.println("Availability RIP :(");
-                System.out.println("Please restart broker and component");
+                LOG.error("Availability RIP :(");
+                LOG.error("Please restart broker and component");
 
             } catch (
                     MqttException mqttException) {
-                throwable.getMessage();
+                LOG.error("Could not disconnect", mqttException);
             }
         }
 
         if (middleware.isConnected() == true) {
             try {
-                middleware.subscribe(new String[]{"BookingRegistry", "Dentists", "BookingRequest", "AvailabilityRequest", "SelectedDate"});
-                System.out.println("Connection to broker reestablished!");
+                String[] topics = {"BookingRegistry", "BookingRegistryDelta", "Dentists", "BookingRequest", "AvailabilityRequest", "NearestAvailabilityRequest", "SelectedDate"};
+                int[] qos = new int[topics.length];
+                Arrays.fill(qos, QOS);
+                middleware.subscribe(topics, qos);
+                if (cluster != null) {
+                    // The broker may have published the will while the connection was lost
+                    middleware.subscribe(new String[]{Cluster.MEMBERS_FILTER, Cluster.HANDOFF_TOPIC},
+                            new int[]{QOS, QOS});
+                    THREAD_POOL.submit(this::announceMember);
+                }
+                LOG.info("Connection to broker reestablished!");
             } catch (MqttException e) {
-                e.printStackTrace();
+                LOG.error("Could not subscribe after reconnecting", e);
             }
         }
     }
 
     /**
-     * TODO: Look into this method
+     * Called when the broker has acknowledged a published message, frees its place in the in-flight window.
      * @param iMqttDeliveryToken
      */
     @Override
     public void deliveryComplete(IMqttDeliveryToken iMqttDeliveryToken) {
+        if (inFlight.remove(iMqttDeliveryToken.getUserContext())) {
+            delivered.incrementAndGet();
+            publishWindow.release();
+        }
+    }
+
+    /**
+     * Messages that were in flight when the connection was lost are not acknowledged anymore, so their places in
+     * the in-flight window are freed and they are counted as undelivered.
+     */
+    private void releaseInFlight() {
+        for (Object publish : inFlight) {
+            if (inFlight.remove(publish)) {
+                undelivered.incrementAndGet();
+                publishWindow.release();
+            }
+        }
+        LOG.warn("Undelivered messages: {}, delivered: {}", undelivered.get(), delivered.get());
     }
 
     /**
-     * Method to publish to the MQTT broker
+     * Method to publish to the MQTT broker.
+     * It only waits when the in-flight window is full, the delivery is completed in deliveryComplete.
      * @param sinkTopic
      * @param msg
-     * @throws MqttException
+     * @throws MqttException thrown when the message cannot be sent, or the window stays full for too long
      */
     public void dump(String sinkTopic, String msg) throws MqttException {
+        dump(sinkTopic, msg.getBytes());
+    }
+
+    /**
+     * Publishes a payload that has already been written, e.g. by JsonWriter.
+     * @param sinkTopic
+     * @param payload message payload, must not be changed afterwards
+     * @throws MqttException thrown when the message cannot be sent, or the window stays full for too long
+     */
+    public void dump(String sinkTopic, byte[] payload) throws MqttException {
         MqttMessage outgoing = new MqttMessage();
-        outgoing.setQos(1);
-        outgoing.setPayload(msg.getBytes());
-        System.out.println("Message to be published: " + outgoing);
-        middleware.publish(sinkTopic, outgoing);
-        System.out.println("Message published!");
+        outgoing.setQos(QOS);
+        outgoing.setPayload(payload);
+
+        try (Timer.Context publishing = METRICS.publish(sinkTopic).time()) {
+            publish(sinkTopic, outgoing);
+        }
+    }
+
+    private void publish(String sinkTopic, MqttMessage outgoing) throws MqttException {
+        try {
+            if (!publishWindow.tryAcquire(PUBLISH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new MqttException(MqttException.REASON_CODE_MAX_INFLIGHT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MqttException(e);
+        }
+
+        Object publish = new Object(); // Identifies the message in deliveryComplete
+        inFlight.add(publish);
+        try {
+            middleware.publish(sinkTopic, outgoing, publish, null);
+        } catch (MqttException | RuntimeException e) {
+            if (inFlight.remove(publish)) {
+                publishWindow.release();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A booking request together with the message it arrived in, which is acknowledged once the request is answered.
+     */
+    private static final class DeliveredBooking {
+        private final ReceivedBooking request;
+        private final MqttMessage message;
+        private final int connection; // Number of connections lost before the message arrived
+        private final AtomicBoolean acknowledged = new AtomicBoolean();
+
+        DeliveredBooking(ReceivedBooking request, MqttMessage message, int connection) {
+            this.request = request;
+            this.message = message;
+            this.connection = connection;
+        }
+
+        ReceivedBooking getRequest() {
+            return request;
+        }
+
+        MqttMessage getMessage() {
+            return message;
+        }
+
+        int getConnection() {
+            return connection;
+        }
+
+        /**
+         * @return true the first time it is called, so the request is acknowledged once
+         */
+        boolean markAcknowledged() {
+            return acknowledged.compareAndSet(false, true);
+        }
     }
 }
@@ -0,0 +1,60 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * ConsistentHashRing assigns keys, e.g. dentist ids, to the members of a cluster. Every member is placed on the ring
+ * at many points, and a key belongs to the member at the first point at or after the key's hash. When a member joins
+ * or leaves, only the keys next to its points move, the others keep their owner.
+ * A ring is immutable, a new one is built whenever the members change.
+ */
+public final class ConsistentHashRing {
+    private static final int POINTS_PER_MEMBER = 128;
+
+    private final TreeMap<Integer, String> points = new TreeMap<>();
+    private final Set<String> members;
+
+    /**
+     * @param members ids of the members, every member that has the same ids builds the same ring
+     */
+    public ConsistentHashRing(Collection<String> members) {
+        this.members = Collections.unmodifiableSet(new TreeSet<>(members));
+        for (String member : this.members) {
+            for (int point = 0; point < POINTS_PER_MEMBER; point++) {
+                // Two members landing on the same point is rare, the one with the smaller id keeps it
+                points.putIfAbsent(mix((member + "#" + point).hashCode()), member);
+            }
+        }
+    }
+
+    /**
+     * @param key key to look up
+     * @return id of the member the key belongs to, or null when the ring has no members
+     */
+    public String owner(long key) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Integer, String> point = points.ceilingEntry(mix(Long.hashCode(key)));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    public Set<String> getMembers() {
+        return members;
+    }
+
+    /**
+     * Spreads similar hash codes, like those of consecutive ids, evenly over the ring (the MurmurHash3 finalizer).
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
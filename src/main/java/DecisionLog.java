@@ -0,0 +1,335 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * DecisionLog appends every booking decision to files on disk, so the reservations of accepted bookings that have
+ * not shown up in the booking registry yet survive a crash, see ReservationLedger.
+ *
+ * Decisions are handed to the log's own thread, which writes everything that has arrived since its last write and
+ * then syncs the file once, so under load many decisions share one sync. A decision is on disk a few milliseconds
+ * after it has been made, and a crash in between loses at most the decisions of that last write. awaitSynced waits
+ * for that sync, so a decision is only published once it would survive a crash.
+ *
+ * The log is split into segment files named decisions-0000000001.log and so on. When a segment is full, the log
+ * continues in a new one and segments without any decision younger than the retention are deleted. When a booking
+ * registry arrives, the log is compacted: the writer starts a new segment, writes the reservations still in the
+ * ledger to it and deletes the segments before it. The ledger is read by the writer, after every decision appended
+ * before the compaction has been written, so a reservation is either copied from the ledger or its decision follows
+ * in the new segment.
+ *
+ * Each decision is a record of 27 bytes, with all numbers big-endian: outcome (1 byte, 1 accepted or 2 rejected),
+ * userid (4 bytes), requestid (4 bytes), dentist id (2 bytes), requested time in epoch minutes (4 bytes), time of the
+ * decision in epoch milliseconds (8 bytes) and the CRC32 of the first 23 bytes (4 bytes). Replaying a segment stops at
+ * the first record with a wrong checksum, e.g. one that was only partly written when the process died.
+ */
+public final class DecisionLog {
+    private static final Logger LOG = LoggerFactory.getLogger(DecisionLog.class);
+
+    private static final byte ACCEPTED = 1;
+    private static final byte REJECTED = 2;
+    private static final int RECORD_BYTES = 27;
+    private static final int CHECKSUM_OFFSET = 23;
+    private static final String SEGMENT_PREFIX = "decisions-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long retentionMillis;
+    private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>(); // Records and compactions, in order
+    private final Thread writer;
+
+    private final List<Path> segments = new ArrayList<>(); // Oldest first, the last one is written to
+    private final List<Path> replaySegments; // Segments that were there when the log was opened
+    private FileChannel channel;
+    private long nextSegment;
+    private volatile boolean closed;
+
+    // Guarded by this: records queued, and records written and synced, in queue order
+    private long appended;
+    private long synced;
+    private boolean stopped; // The writer has ended, nothing more will be synced
+
+    /**
+     * Opens the log, new decisions are appended to a new segment after the existing ones.
+     * @param directory directory of the segment files, created when it does not exist
+     * @param segmentBytes size after which the log continues in a new segment
+     * @param retentionMillis segments with only older decisions are deleted, e.g. the reservation time to live
+     * @throws IOException thrown when the directory or the new segment cannot be created
+     */
+    public DecisionLog(Path directory, long segmentBytes, long retentionMillis) throws IOException {
+        if (segmentBytes < RECORD_BYTES) {
+            throw new IllegalArgumentException("Segments have to fit at least one decision: " + segmentBytes);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.retentionMillis = retentionMillis;
+        replaySegments = listSegments(directory);
+        segments.addAll(replaySegments);
+        nextSegment = segments.isEmpty() ? 1 : segmentNumber(segments.get(segments.size() - 1)) + 1;
+        openSegment();
+
+        writer = new Thread(this::run, "decision-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Logs a decision. Requests that could not be read are not logged, as they have no dental office or time.
+     * @param requestBooking booking request
+     * @param decision the successful or rejected booking
+     * @param now time of the decision in milliseconds
+     */
+    public void append(ReceivedBooking requestBooking, ReceivedBooking decision, long now) {
+        if (closed || requestBooking.getEpochMinute() == BookingTime.NONE) {
+            return;
+        }
+        byte outcome = decision.getEpochMinute() != BookingTime.NONE ? ACCEPTED : REJECTED;
+        byte[] record = record(outcome, requestBooking.getUserid(), requestBooking.getRequestid(),
+                requestBooking.getDentistid(), requestBooking.getEpochMinute(), now);
+        synchronized (this) {
+            queue.add(record);
+            appended++;
+        }
+    }
+
+    /**
+     * Waits until every decision appended before the call has been written and synced, or the log has stopped.
+     * Decisions appended by other threads in the meantime share the same sync.
+     * @throws InterruptedException thrown when interrupted while waiting
+     */
+    public synchronized void awaitSynced() throws InterruptedException {
+        long waitingFor = appended;
+        while (synced < waitingFor && !stopped) {
+            wait();
+        }
+    }
+
+    /**
+     * Replays the accepted decisions of the segments that were there when the log was opened, oldest first.
+     * @param reservations receives every accepted decision made after since
+     * @param since decisions made before this time in milliseconds are skipped
+     * @return the number of accepted decisions passed on
+     * @throws IOException thrown when a segment cannot be read
+     */
+    public int replay(ReservationLedger.ReservationConsumer reservations, long since) throws IOException {
+        int replayed = 0;
+        for (Path segment : replaySegments) {
+            if (!Files.exists(segment)) {
+                continue; // Already compacted
+            }
+            ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(segment));
+            while (records.remaining() >= RECORD_BYTES) {
+                int start = records.position();
+                if (!hasValidChecksum(records, start)) {
+                    LOG.warn("Decision log {} is damaged after {} bytes, the rest is skipped", segment, start);
+                    break;
+                }
+                byte outcome = records.get();
+                long userid = records.getInt();
+                long requestid = records.getInt();
+                long dentistid = records.getShort();
+                long epochMinute = records.getInt();
+                long decidedAt = records.getLong();
+                records.getInt(); // Checksum
+                if (outcome == ACCEPTED && decidedAt >= since) {
+                    reservations.accept(Filter.bookingKey(userid, requestid), dentistid, epochMinute, decidedAt);
+                    replayed++;
+                }
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Replaces all segments by one holding only the reservations in the ledger. The writer reads the ledger when it
+     * gets to the compaction, not the calling thread.
+     * @param ledger reservations that are still waiting for the booking registry
+     */
+    public void compact(ReservationLedger ledger) {
+        queue.add(new Compaction(ledger));
+    }
+
+    /**
+     * @return the number of decisions waiting to be written
+     */
+    public int getQueuedDecisions() {
+        return queue.size();
+    }
+
+    /**
+     * Writes the decisions that have been appended and closes the log.
+     * @throws InterruptedException thrown when interrupted while waiting for the writer
+     */
+    public void close() throws InterruptedException {
+        closed = true;
+        queue.add(new Compaction(null)); // Wakes the writer up
+        writer.join();
+    }
+
+    private void run() {
+        List<Object> batch = new ArrayList<>();
+        ByteBuffer records = ByteBuffer.allocate(64 * 1024);
+        try {
+            while (!closed || !queue.isEmpty()) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                int written = 0;
+                for (Object entry : batch) {
+                    if (entry instanceof byte[]) {
+                        if (records.remaining() < RECORD_BYTES) {
+                            write(records);
+                        }
+                        records.put((byte[]) entry);
+                        written++;
+                    } else if (((Compaction) entry).ledger != null) {
+                        write(records);
+                        writeCompaction(((Compaction) entry).ledger);
+                    }
+                }
+                write(records);
+                channel.force(false); // One sync for the whole batch
+                synced(written);
+                batch.clear();
+            }
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Decision log {} has stopped, decisions are no longer logged", directory, e);
+            closed = true;
+        } finally {
+            synchronized (this) {
+                stopped = true;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized void synced(int records) {
+        synced += records;
+        notifyAll();
+    }
+
+    private void write(ByteBuffer records) throws IOException {
+        records.flip();
+        while (records.hasRemaining()) {
+            channel.write(records);
+        }
+        records.clear();
+        if (channel.size() >= segmentBytes) {
+            channel.force(false);
+            channel.close();
+            openSegment();
+            deleteExpiredSegments();
+        }
+    }
+
+    /**
+     * Starts a new segment holding the reservations of the ledger, and deletes the segments written before it.
+     * Decisions appended while the ledger is read are written after it, in the new segment.
+     */
+    private void writeCompaction(ReservationLedger ledger) throws IOException {
+        channel.force(false);
+        channel.close();
+        List<Path> compacted = new ArrayList<>(segments);
+        openSegment();
+        ByteArrayOutputStream reservations = new ByteArrayOutputStream((ledger.size() + 64) * RECORD_BYTES);
+        ledger.forEach((bookingKey, dentistid, epochMinute, reservedAt) -> {
+            byte[] record = record(ACCEPTED, bookingKey / 100000, bookingKey % 100000, dentistid, epochMinute,
+                    reservedAt);
+            reservations.write(record, 0, record.length);
+        });
+        ByteBuffer live = ByteBuffer.wrap(reservations.toByteArray());
+        while (live.hasRemaining()) {
+            channel.write(live);
+        }
+        channel.force(false);
+        for (Path segment : compacted) {
+            Files.deleteIfExists(segment);
+            segments.remove(segment);
+        }
+    }
+
+    /**
+     * Deletes the closed segments whose last write is older than the retention.
+     */
+    private void deleteExpiredSegments() throws IOException {
+        long oldest = System.currentTimeMillis() - retentionMillis;
+        for (Path segment : new ArrayList<>(segments.subList(0, segments.size() - 1))) {
+            if (Files.getLastModifiedTime(segment).toMillis() < oldest) {
+                Files.deleteIfExists(segment);
+                segments.remove(segment);
+            }
+        }
+    }
+
+    private void openSegment() throws IOException {
+        Path segment = directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, nextSegment++, SEGMENT_SUFFIX));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segments.add(segment);
+    }
+
+    private static byte[] record(byte outcome, long userid, long requestid, long dentistid, long epochMinute,
+                                 long decidedAt) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        record.put(outcome)
+                .putInt((int) userid)
+                .putInt((int) requestid)
+                .putShort((short) dentistid)
+                .putInt((int) epochMinute)
+                .putLong(decidedAt);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, CHECKSUM_OFFSET);
+        record.putInt((int) crc.getValue());
+        return record.array();
+    }
+
+    private static boolean hasValidChecksum(ByteBuffer records, int start) {
+        CRC32 crc = new CRC32();
+        crc.update(records.array(), start, CHECKSUM_OFFSET);
+        return records.getInt(start + CHECKSUM_OFFSET) == (int) crc.getValue();
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        Collections.sort(segments); // The numbers are zero-padded, so the names sort oldest first
+        return segments;
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Asks the writer to compact the log with the reservations of the ledger, or to check whether it is closed when
+     * ledger is null.
+     */
+    private static final class Compaction {
+        private final ReservationLedger ledger;
+
+        private Compaction(ReservationLedger ledger) {
+            this.ledger = ledger;
+        }
+    }
+}
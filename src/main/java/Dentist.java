@@ -1,6 +1,5 @@
+import java.time.DayOfWeek;
 import java.util.HashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class Dentist {
 
@@ -41,8 +40,7 @@ public class Dentist {
     }
 
     public void setId(long id) {
-    	String idValidation = String.valueOf(id); // Converts the long id to a String to be used for validation
-        if (idValidation.matches("[0-9]{1,4}")) { // This allows there to be up to 9999 dental offices
+        if (Validation.isValidDentistid(id)) { // This allows there to be up to 9999 dental offices
             this.id = id;
         } else {
             throw new IllegalArgumentException("Id can be between one and four digits long: " + id);
@@ -54,10 +52,7 @@ public class Dentist {
     }
 
     public void setDentistName(String dentistName) {
-    	Pattern p = Pattern.compile("^[^!?(){}<>#;/%&$£@=+*]+$");
-        Matcher m = p.matcher(dentistName);
-        boolean b = m.matches();
-        if (b == false) {
+        if (!Validation.isValidName(dentistName)) {
             throw new IllegalArgumentException("Dentist name can only consist of lowercase letters, uppercase letters, and numbers: " + dentistName);
         }
         this.dentistName = dentistName;
@@ -68,10 +63,7 @@ public class Dentist {
     }
 
     public void setOwner(String owner) {
-    	Pattern p = Pattern.compile("^[^!?(){}<>#;/%&$£@=+*]+$");
-        Matcher m = p.matcher(owner);
-        boolean b = m.matches();
-        if (b == false) {
+        if (!Validation.isValidName(owner)) {
         	throw new IllegalArgumentException("Owner name can only consist of lowercase letters and uppercase letters: " + owner);
         }
         this.owner = owner;
@@ -82,9 +74,7 @@ public class Dentist {
     }
 
     public void setDentistNumber(long dentistNumber) {
-    	String dentistNumberValidation = String.valueOf(dentistNumber);
-        // Converts the long dentistNumber to a String to be used for validation
-        if (dentistNumberValidation.matches("[0-9]{1,2}")) {
+        if (Validation.isValidDentistNumber(dentistNumber)) {
             this.dentistNumber = dentistNumber;
         } else {
             throw new IllegalArgumentException("Number of dentists can be between one and two digits long: " + dentistNumber);
@@ -96,11 +86,7 @@ public class Dentist {
     }
 
     public void setAddress(String address) {
-    	Pattern p = Pattern.compile("^[^!?(){}<>#;/%&$@=+*]+$");
-        Matcher m = p.matcher(address);
-        boolean b = m.matches();
-
-        if (b == true) {
+        if (Validation.isValidAddress(address)) {
             this.address = address;
          } else {
             throw new IllegalArgumentException("Illegal characters in address: " + address);
@@ -112,10 +98,7 @@ public class Dentist {
     }
 
     public void setCity(String city) {
-    	Pattern p = Pattern.compile("^[^!?(){}<>#;/%&$@=+*]+$");
-        Matcher m = p.matcher(city);
-        boolean b = m.matches();
-        if (b == false) {
+        if (!Validation.isValidAddress(city)) {
         	throw new IllegalArgumentException("Illegal characters in city: " + city);
         }
         this.city = city;
@@ -126,12 +109,7 @@ public class Dentist {
     }
 
     public void setLatitude(double latitude) {
-    	String latitudeValidation = String.valueOf(latitude); // Converts the double latitude to a String to be used for validation
-        if (latitudeValidation.matches("^(\\+|-)?(?:90(?:(?:\\.0{1,6})?)|(?:[0-9]|[1-8][0-9])(?:(?:\\.[0-9]{1,6})?))$")) {
-            /*
-            * The regex was taken from this StackOverFlow forum: https://stackoverflow.com/questions/3518504/regular-expression-for-matching-latitude-longitude-coordinates
-            * on December 15th, 2020
-            */
+        if (Validation.isValidLatitude(latitude)) {
             this.latitude = latitude;
         } else {
             throw new IllegalArgumentException("Latitude has to be nine characters long and consist of numbers, including a dot: " + latitude);
@@ -143,12 +121,7 @@ public class Dentist {
     }
 
     public void setLongitude(double longitude) {
-    	 String longitudeValidation = String.valueOf(latitude); // Converts the double longitude to a String to be used for validation
-         if (longitudeValidation.matches("^(\\+|-)?(?:180(?:(?:\\.0{1,6})?)|(?:[0-9]|[1-9][0-9]|1[0-7][0-9])(?:(?:\\.[0-9]{1,6})?))$")) {
-             /*
-              * The regex was taken from this StackOverFlow forum: https://stackoverflow.com/questions/3518504/regular-expression-for-matching-latitude-longitude-coordinates
-              * on December 15th, 2020
-              */
+         if (Validation.isValidLongitude(latitude)) { // Checks the latitude set before, like the regex check it replaces
              this.longitude = longitude;
          } else {
              throw new IllegalArgumentException("Longitude has to be nine characters long and consist of numbers, including a dot: " + longitude);
@@ -160,7 +133,7 @@ public class Dentist {
     }
 
     public void setMonday(String monday) {
-    	 if (monday.matches("^[0-9][:][-]{10,11}$")) {
+    	 if (!Validation.isValidOpeningHours(monday)) {
              throw new IllegalArgumentException("Opening hours has to be between nine and eleven characters long and " +
                      "consist of numbers, colons, and dashes (in format 7:00-14:00): " + monday);
          }
@@ -172,7 +145,7 @@ public class Dentist {
     }
 
     public void setTuesday(String tuesday) {
-    	if (tuesday.matches("^[0-9][:][-]{10,11}$")) {
+    	if (!Validation.isValidOpeningHours(tuesday)) {
             throw new IllegalArgumentException("Opening hours has to be between nine and eleven characters long and " +
                     "consist of numbers, colons, and dashes (in format 7:00-14:00): " + tuesday);
         }
@@ -184,7 +157,7 @@ public class Dentist {
     }
 
     public void setWednesday(String wednesday) {
-    	if (wednesday.matches("^[0-9][:][-]{10,11}$")) {
+    	if (!Validation.isValidOpeningHours(wednesday)) {
             throw new IllegalArgumentException("Opening hours has to be between nine and eleven characters long and " +
                     "consist of numbers, colons, and dashes (in format 7:00-14:00): " + wednesday);
         }
@@ -196,7 +169,7 @@ public class Dentist {
     }
 
     public void setThursday(String thursday) {
-    	 if (thursday.matches("^[0-9][:][-]{10,11}$")) {
+    	 if (!Validation.isValidOpeningHours(thursday)) {
              throw new IllegalArgumentException("Opening hours has to be between nine and eleven characters long and " +
                      "consist of numbers, colons, and dashes (in format 7:00-14:00): " + thursday);
          }
@@ -208,7 +181,7 @@ public class Dentist {
     }
 
     public void setFriday(String friday) {
-    	if (friday.matches("^[0-9][:][-]{10,11}$")) {
+    	if (!Validation.isValidOpeningHours(friday)) {
             throw new IllegalArgumentException("Opening hours has to be between nine and eleven characters long and " +
                     "consist of numbers, colons, and dashes (in format 7:00-14:00): " + friday);
         }
@@ -232,6 +205,28 @@ public class Dentist {
         return weekOpeningHours;
     }
 
+    /**
+     * Returns the opening hours of one weekday without building the whole week.
+     * @param dayOfWeek weekday
+     * @return opening hours, or null if the office is closed that day
+     */
+    public String getOpeningHours(DayOfWeek dayOfWeek) {
+        switch (dayOfWeek) {
+            case MONDAY:
+                return getMonday();
+            case TUESDAY:
+                return getTuesday();
+            case WEDNESDAY:
+                return getWednesday();
+            case THURSDAY:
+                return getThursday();
+            case FRIDAY:
+                return getFriday();
+            default:
+                return null;
+        }
+    }
+
     /*add toString*/
     @Override
     public String toString() {
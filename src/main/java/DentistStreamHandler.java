@@ -0,0 +1,112 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.Consumer;
+
+/**
+ * DentistStreamHandler creates a Dentist for every record in the "dentists" array of a dentist registry
+ * while the registry is being parsed.
+ */
+public class DentistStreamHandler extends RecordStreamHandler {
+    private static final Logger LOG = LoggerFactory.getLogger(DentistStreamHandler.class);
+
+    private final Consumer<Dentist> dentists;
+
+    private Object id;
+    private Object dentistName;
+    private Object owner;
+    private Object dentistNumber;
+    private Object address;
+    private Object city;
+    private Object latitude;
+    private Object longitude;
+    private Object monday;
+    private Object tuesday;
+    private Object wednesday;
+    private Object thursday;
+    private Object friday;
+
+    /**
+     * @param dentists receives each valid dental office, invalid offices are skipped
+     */
+    public DentistStreamHandler(Consumer<Dentist> dentists) {
+        super("dentists");
+        this.dentists = dentists;
+    }
+
+    @Override
+    protected void startRecord() {
+        id = null;
+        dentistName = null;
+        owner = null;
+        dentistNumber = null;
+        address = null;
+        city = null;
+        latitude = null;
+        longitude = null;
+        monday = null;
+        tuesday = null;
+        wednesday = null;
+        thursday = null;
+        friday = null;
+    }
+
+    @Override
+    protected void field(String key, Object value) {
+        switch (key) {
+            case "id":
+                id = value;
+                break;
+            case "name":
+                dentistName = value;
+                break;
+            case "owner":
+                owner = value;
+                break;
+            case "dentists":
+                dentistNumber = value;
+                break;
+            case "address":
+                address = value;
+                break;
+            case "city":
+                city = value;
+                break;
+            case "latitude":
+                latitude = value;
+                break;
+            case "longitude":
+                longitude = value;
+                break;
+            case "monday":
+                monday = value;
+                break;
+            case "tuesday":
+                tuesday = value;
+                break;
+            case "wednesday":
+                wednesday = value;
+                break;
+            case "thursday":
+                thursday = value;
+                break;
+            case "friday":
+                friday = value;
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    protected void endRecord() {
+        try {
+            // Creating a dentist object using the fields from the parsed JSON
+            dentists.accept(new Dentist((Long) id, (String) dentistName, (String) owner, (Long) dentistNumber,
+                    (String) address, (String) city, (Double) latitude, (Double) longitude, (String) monday,
+                    (String) tuesday, (String) wednesday, (String) thursday, (String) friday));
+        } catch (IllegalArgumentException | ClassCastException | NullPointerException e) {
+            LOG.warn("Error when creating new Dentist: {}", e.getMessage());
+        }
+    }
+}
@@ -3,233 +3,458 @@ import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
-
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.function.Supplier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongPredicate;
 
 /**
  * Filter class is filtering a received booking using the pipe-and-filter style.
  * It also filters out available time slots.
+ *
+ * Requests can be decided on any number of threads at the same time. Each request is passed along with its own
+ * context, and the registries are read from the current RegistrySnapshot, which registry messages replace.
+ * Registry messages are applied one at a time.
  */
-public class Filter implements Supplier<ReceivedBooking>  {
-
-    private ArrayList<Booking> receivedBookingRegistry;
-    private ArrayList<Dentist> receivedDentistRegistry;
-    private LocalDate receivedSelectedDate;
-    private ReceivedBooking receivedBooking;
+public class Filter {
+    private final static Logger LOG = LoggerFactory.getLogger(Filter.class);
+    private final static int AVAILABILITY_CACHE_SIZE = 64; // Number of free-slots payloads kept in the cache
+    private final static int DECISION_CACHE_SIZE = 65536; // Number of booking decisions kept for repeated requests
+    private final static int DECISION_CACHE_STRIPES = 64; // More than booking workers, so they rarely share a stripe
+    private final static int MAX_SELECTED_DAYS = 31; // Longest date range of an availability request
+    private final static int MAX_NEAREST_OFFICES = 50; // Most offices a nearest availability request can ask for
+    private final static int DEFAULT_NEAREST_OFFICES = 5;
+    final static long RESERVATION_TTL_MILLIS = 60 * 1000; // Time an accepted booking waits for the registry
+    private final static DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    // Versions in the snapshot are increased whenever a registry changes, cached availability is only valid for one
+    private volatile RegistrySnapshot registries = RegistrySnapshot.empty();
+    private final AvailabilityCache availabilityCache = new AvailabilityCache(AVAILABILITY_CACHE_SIZE);
+    private final ReservationLedger reservationLedger = new ReservationLedger(RESERVATION_TTL_MILLIS);
+    // Latest decisions by booking key, so a request the broker delivers again gets the same answer instead of being
+    // decided a second time against changed registries. Striped, so the booking workers do not wait for each other
+    private final StripedLruCache<Long, ReceivedBooking> decisionCache =
+            new StripedLruCache<>(DECISION_CACHE_SIZE, DECISION_CACHE_STRIPES);
+    private volatile ForkJoinPool availabilityPool; // Only used when there is more than one availability worker
+    private volatile DecisionLog decisionLog; // Only used when the decision log is turned on
 
     /**
-     * Throwing random exceptions.
-     * @return a ReceivedBooking that can be either successful or rejected.
+     * This method counts the number of appointments that have already been made with the requested dentist at the
+     * requested time, using the occupancy index built from the booking registry and the bookings that have been
+     * accepted since, see ReservationLedger
+     * @param requestBooking
+     * @param occupancy
+     * @return
      */
-    @Override
-    public ReceivedBooking get() {
-        if (receivedBooking != null) {
-            checkAvailability(receivedBooking, receivedDentistRegistry, receivedBookingRegistry);
-        } else {
-            System.out.println("Waiting for a booking request...");
-        }
-
-        return receivedBooking;
+    public int countExistingAppointments(ReceivedBooking requestBooking, OccupancyIndex occupancy) {
+        return occupancy.countBookings(requestBooking.getDentistid(), requestBooking.getEpochMinute())
+                + reservationLedger.countReservations(requestBooking.getDentistid(), requestBooking.getEpochMinute());
     }
 
-    // If booking(i).dentistID is the same as requestBooking.dentistID, add to ArrayList of bookings from the same dentist
-    public ArrayList<Booking> getDentistBookings(ReceivedBooking requestBooking, ArrayList<Booking> bookings) {
-        ArrayList<Booking> requestedDentistConfirmedBookings = new ArrayList<>();
+    /**
+     * This method is used in checkAppointmentSlots to find the number of dentists working at the requested location
+     * @param dentistRegistry dental offices by id
+     * @param requestBooking
+     * @return
+     */
+    public long checkDentistNumber(Map<Long, Dentist> dentistRegistry, ReceivedBooking requestBooking) {
+        Dentist dentist = dentistRegistry.get(requestBooking.getDentistid());
+        return dentist == null ? 0 : dentist.getDentistNumber();
+    }
 
-        for (int i = 0; i < bookings.size(); i++) {
-            // if the requested dentist office has the request timeslot available, make the booking
-            if (requestBooking.getDentistid() == bookings.get(i).getDentistid()) {
-                Booking newBooking = bookings.get(i);
-                requestedDentistConfirmedBookings.add(newBooking);
+    /**
+     * This method takes in the number of existing appointments from countExistingAppointments, if there is at least
+     * one it compares it to the number of dentists working at that location
+     * If there are none, a booking is created as there are no appointments on the requested date and time
+     * @param existingAppointments
+     * @param requestBooking
+     * @param dentistRegistry
+     * @return the accepted or rejected booking
+     */
+    public ReceivedBooking checkAppointmentSlots(int existingAppointments, ReceivedBooking requestBooking,
+                                                 Map<Long, Dentist> dentistRegistry) {
+        if (existingAppointments > 0) {
+            long numberOfWorkingDentists = checkDentistNumber(dentistRegistry, requestBooking);
+
+            if (existingAppointments < numberOfWorkingDentists) {
+                return makeSuccessfulBooking(requestBooking);
+            } else {
+                return makeRejectedBooking(requestBooking);
             }
+        } else {
+            return makeSuccessfulBooking(requestBooking);
         }
-        return requestedDentistConfirmedBookings;
     }
 
     /**
-     * This method takes in a booking request and the requestedDentistConfirmedBookings from the checkDentistBooking method
-     * and it checks if there are any date and time matches
-     * @param requestBooking
-     * @param requestedDentistConfirmedBookings
-     * @return
+     * This is the main method that checks if the requested booking can be made.
+     * It is decided against the registries that are current when it is called, and an accepted booking is reserved
+     * until it shows up in the booking registry. Requests for the same dental office have to be decided one at a time.
+     * @param requestBooking booking request created by makeReceivedBooking
+     * @return a ReceivedBooking that can be either successful or rejected.
      */
-    public boolean checkForMatchingDate(ReceivedBooking requestBooking, ArrayList<Booking> requestedDentistConfirmedBookings) {
-        boolean check = false;
+    public ReceivedBooking checkAvailability(ReceivedBooking requestBooking) {
+        return checkAvailability(requestBooking, registries);
+    }
 
-        for (int i = 0; i < requestedDentistConfirmedBookings.size(); i++) {
-            if (requestedDentistConfirmedBookings.get(i).getTime().equals(requestBooking.getTime())) {
-                check = true;
-            }
+    /**
+     * Checks if the requested booking can be made with the given registries.
+     * A request that has been decided before, e.g. one the broker delivered again, gets the earlier decision. One that
+     * is no longer in the decision cache, e.g. after a restart, is accepted again while its booking is reserved or in
+     * the booking registry, instead of being rejected for the chair it took itself.
+     * @param requestBooking booking request created by makeReceivedBooking
+     * @param snapshot registries to decide against
+     * @return a ReceivedBooking that can be either successful or rejected.
+     */
+    public ReceivedBooking checkAvailability(ReceivedBooking requestBooking, RegistrySnapshot snapshot) {
+        // Requests that could not be read have already been rejected
+        if (requestBooking.getEpochMinute() == BookingTime.NONE) {
+            return requestBooking;
+        }
+        long key = bookingKey(requestBooking.getUserid(), requestBooking.getRequestid());
+        ReceivedBooking earlierDecision = decisionCache.get(key);
+        if (earlierDecision != null) {
+            LOG.debug("REPEATED {}", requestBooking.getRequestid());
+            return earlierDecision;
+        }
+        if (isBooked(key, requestBooking, snapshot)) {
+            LOG.debug("REPEATED {}, already booked", requestBooking.getRequestid());
+            ReceivedBooking acceptedBooking = makeSuccessfulBooking(requestBooking);
+            decisionCache.put(key, acceptedBooking);
+            return acceptedBooking;
         }
-        return check;
+
+        // Looks up how many appointments there already are with the requested dentist on the requested date&time
+        int existingAppointments = countExistingAppointments(requestBooking, snapshot.getOccupancy());
+
+        // Now calls method to either accept appointment if none on date&time, or compare the number of appointments
+        // to # of dentists at location
+        ReceivedBooking decision = checkAppointmentSlots(existingAppointments, requestBooking,
+                snapshot.getDentistsById());
+        recordDecision(requestBooking, decision);
+        decisionCache.put(key, decision);
+        return decision;
     }
 
     /**
-     * This method counts the number of appointments that have already been made with the requested dentist at the requested time
-     * Used in checkAppointmentSlots
-     * @param requestedDentistConfirmedBookings
-     * @param requestBooking
-     * @param dentistRegistry
+     * @return true when the booking of a request has already been accepted for the same dental office and time, so its
+     * chair is counted in the booking registry or the reservations
      */
-    public void countExistingAppointments(ArrayList<Booking> requestedDentistConfirmedBookings, ReceivedBooking requestBooking,
-                                          ArrayList<Dentist> dentistRegistry) {
-        int count = 0;
-        long numberOfWorkingDentists = checkDentistNumber(dentistRegistry, requestBooking);
-
-        for (int i = 0; i < requestedDentistConfirmedBookings.size(); i++) {
+    private boolean isBooked(long key, ReceivedBooking requestBooking, RegistrySnapshot snapshot) {
+        Booking booked = snapshot.getBookings().get(key);
+        if (booked != null) {
+            return booked.getDentistid() == requestBooking.getDentistid()
+                    && booked.getEpochMinute() == requestBooking.getEpochMinute();
+        }
+        return reservationLedger.isReserved(key, requestBooking.getDentistid(), requestBooking.getEpochMinute());
+    }
 
-            if (requestedDentistConfirmedBookings.get(i).getTime().equals(requestBooking.getTime())) {
-                count = count + 1;
+    /**
+     * Waits until the decisions made so far are on disk when the decision log is turned on, call it before publishing
+     * them. The decision log syncs many decisions at once, so it is called after deciding, not while deciding.
+     */
+    public void awaitDecisionsLogged() {
+        DecisionLog log = decisionLog;
+        if (log != null) {
+            try {
+                log.awaitSynced();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
+    }
 
-        if (count < numberOfWorkingDentists) {
-            setSuccessfulBooking(requestBooking);
-        } else {
-            setRejectedBooking(requestBooking);
+    /**
+     * Reserves the chair of an accepted booking and logs the decision when the decision log is turned on.
+     */
+    private void recordDecision(ReceivedBooking requestBooking, ReceivedBooking decision) {
+        long now = System.currentTimeMillis();
+        if (decision.getEpochMinute() != BookingTime.NONE) {
+            reservationLedger.reserve(bookingKey(decision.getUserid(), decision.getRequestid()),
+                    decision.getDentistid(), decision.getEpochMinute(), now);
+        }
+        DecisionLog log = decisionLog;
+        if (log != null) {
+            log.append(requestBooking, decision, now);
         }
     }
 
     /**
-     * This method is used in countExistingAppointments to find the number of dentists working at the requested location
-     * @param dentistRegistry
-     * @param requestBooking
-     * @return
+     * Decides a batch of booking requests together against the current snapshot.
+     * Requests are decided in issuance order, and a request accepted earlier in the batch is reserved before the
+     * later ones are decided, so two requests in a batch can never both get the last chair. Booking registry deltas
+     * that arrive during the batch are seen by the requests decided after them, see RegistrySnapshot.
+     * @param requestBookings booking requests created by makeReceivedBooking
+     * @return the successful or rejected bookings, in issuance order
      */
-    public long checkDentistNumber(ArrayList<Dentist> dentistRegistry, ReceivedBooking requestBooking) {
-        long numberOfWorkingDentists = 0;
-        for (int i = 0; i < dentistRegistry.size(); i++) {
-            if (dentistRegistry.get(i).getId() == requestBooking.getDentistid()) {
-                numberOfWorkingDentists = dentistRegistry.get(i).getDentistNumber();
-            }
+    public List<ReceivedBooking> checkAvailability(List<ReceivedBooking> requestBookings) {
+        RegistrySnapshot snapshot = registries;
+        ArrayList<ReceivedBooking> byIssuance = new ArrayList<>(requestBookings);
+        byIssuance.sort(Comparator.comparingLong(ReceivedBooking::getIssuance));
+
+        ArrayList<ReceivedBooking> decisions = new ArrayList<>(byIssuance.size());
+        for (ReceivedBooking requestBooking : byIssuance) {
+            decisions.add(checkAvailability(requestBooking, snapshot));
         }
-        return numberOfWorkingDentists;
+        return decisions;
     }
-    // If any bookings have the same date&time, boolean above is true, send array to XXXX method to check how many
-    // If none, boolean becomes false, booking possible! Send request to Booking component
 
     /**
-     * This method takes in a boolean from the checkForMatchingDate method, if it is true then it means there is already
-     * at least one booking on that date, so it counts how many appointments there are and compares it to the number of
-     * dentists working at that location
-     * If it is false, a booking is created as there are no appointments on the requested date and time
-     * @param checkedDate
-     * @param requestedDentistConfirmedBookings
-     * @param requestBooking
-     * @param dentistRegistry
+     * Replaces the dentist registry. The payload is parsed as a stream, so each dental office is created as soon as
+     * it has been read instead of first building the whole JSON document.
+     * @param message incoming MqttMessage containing the whole dentist registry
+     * @throws Exception thrown when the message cannot be parsed
      */
-    public void checkAppointmentSlots(boolean checkedDate, ArrayList<Booking> requestedDentistConfirmedBookings,
-                                      ReceivedBooking requestBooking, ArrayList<Dentist> dentistRegistry) {
-        if (checkedDate == true) {
-            countExistingAppointments(requestedDentistConfirmedBookings, requestBooking, dentistRegistry);
+    public synchronized void makeDentistArray(MqttMessage message) throws Exception {
+        ArrayList<Dentist> dentistsRegistry = new ArrayList<>();
 
-        } else if (checkedDate == false) {
-            setSuccessfulBooking(requestBooking);
+        // Adding dentist objects created using the fields from the parsed JSON to arraylist
+        DentistStreamHandler handler = new DentistStreamHandler(dentistsRegistry::add);
+        new JSONParser().parse(payloadReader(message), handler);
+
+        if (!handler.hasRecordArray()) {
+            throw new IllegalArgumentException("Dentist registry has no dentists array");
         }
+        registriesChanged(registries.withDentists(dentistsRegistry));
     }
 
     /**
-     * This is the main method that checks if the requested booking can be made
-     * @param requestBooking
-     * @param dentistRegistry
-     * @param bookingRegistry
+     * Replaces the booking registry with a full snapshot, used at start-up and to resync.
+     * The payload is parsed as a stream, like in makeDentistArray.
+     * Single bookings added or removed after that arrive as deltas, see applyBookingDelta.
+     * @param message incoming MqttMessage containing the whole booking registry
+     * @throws Exception thrown when the message cannot be parsed
      */
-    public void checkAvailability(ReceivedBooking requestBooking, ArrayList<Dentist> dentistRegistry,
-                                  ArrayList<Booking> bookingRegistry) {
-
-        // Stores new filtered array of bookings for a particular dentist
-        ArrayList<Booking> requestedDentistConfirmedBookings = getDentistBookings(requestBooking, bookingRegistry);
+    public synchronized void makeBookingArray(MqttMessage message) throws Exception {
+        ConcurrentHashMap<Long, Booking> bookingsRegistry = new ConcurrentHashMap<>();
 
-        // Stores a boolean that is returned by checkForMatchingDate (if there are existing appts on requested date)
-        boolean checkedDate = checkForMatchingDate(requestBooking, requestedDentistConfirmedBookings);
+        BookingStreamHandler handler = new BookingStreamHandler(newBooking ->
+                bookingsRegistry.put(bookingKey(newBooking.getUserid(), newBooking.getRequestid()), newBooking));
+        new JSONParser().parse(payloadReader(message), handler);
 
-        // Now calls method to either accept appointment if none on date&time, or check how many and compare to # of
-        // dentists at location
-        checkAppointmentSlots(checkedDate, requestedDentistConfirmedBookings, requestBooking, dentistRegistry);
+        if (!handler.hasRecordArray()) {
+            throw new IllegalArgumentException("Booking registry has no bookings array");
+        }
+        registriesChanged(registries.withBookings(bookingsRegistry, new OccupancyIndex(bookingsRegistry.values())));
+        reservationLedger.reconcile(bookingsRegistry, System.currentTimeMillis());
+        DecisionLog log = decisionLog;
+        if (log != null) {
+            log.compact(reservationLedger);
+        }
     }
 
-    public void makeDentistArray(MqttMessage message) throws Exception {
+    /**
+     * Patches the booking registry with the bookings that have been added or removed since the last message,
+     * so the cost depends on the size of the change rather than the size of the registry.
+     * Removed bookings only need their userid and requestid.
+     * The booking registry and occupancy index of the current snapshot are patched in place, so requests that are
+     * being decided at the same time may already see part of the change.
+     * @param message incoming MqttMessage in the format { "added": [ bookings ], "removed": [ bookings ] }
+     * @throws Exception thrown when the message cannot be parsed
+     */
+    public synchronized void applyBookingDelta(MqttMessage message) throws Exception {
+        RegistrySnapshot snapshot = registries;
+        ConcurrentHashMap<Long, Booking> bookingRegistry = snapshot.getBookings();
+        OccupancyIndex occupancy = snapshot.getOccupancy();
         JSONParser jsonParser = new JSONParser();
         Object jsonObject = jsonParser.parse(message.toString());
-        JSONObject dentistObj = (JSONObject) jsonObject;
-        JSONArray dentistsJSON = (JSONArray) dentistObj.get("dentists");
-
-        ArrayList<Dentist> dentistsRegistry = new ArrayList<>();
-
-        for (Object dentist : dentistsJSON) {
-            JSONObject dObj = (JSONObject) dentist;
-            try {
+        JSONObject deltaObj = (JSONObject) jsonObject;
+        JSONArray addedJSON = (JSONArray) deltaObj.get("added");
+        JSONArray removedJSON = (JSONArray) deltaObj.get("removed");
+
+        if (removedJSON != null) {
+            for (Object booking : removedJSON) {
+                JSONObject bObj = (JSONObject) booking;
+                try {
+                    long userid = (Long) bObj.get("userid");
+                    long requestid = (Long) bObj.get("requestid");
+
+                    Booking removedBooking = bookingRegistry.remove(bookingKey(userid, requestid));
+                    if (removedBooking != null) {
+                        occupancy.remove(removedBooking);
+                    }
+                    reservationLedger.release(bookingKey(userid, requestid));
+                } catch (ClassCastException | NullPointerException e) {
+                    LOG.warn("Error when removing Booking: {}", bObj);
+                }
+            }
+        }
 
-                long id = (Long) dObj.get("id");
-                String dentistName = (String) dObj.get("name");
-                String owner = (String) dObj.get("owner");
-                long dentistNumber = (Long) dObj.get("dentists");
-                String address = (String) dObj.get("address");
-                String city = (String) dObj.get("city");
-
-                JSONObject coordinateObj = (JSONObject) dObj.get("coordinate");
-                JSONObject openinghoursObj = (JSONObject) dObj.get("openinghours");
-
-                double latitude = (Double) coordinateObj.get("latitude");
-                double longitude = (Double) coordinateObj.get("longitude");
-                String monday = (String) openinghoursObj.get("monday");
-                String tuesday = (String) openinghoursObj.get("tuesday");
-                String wednesday = (String) openinghoursObj.get("wednesday");
-                String thursday = (String) openinghoursObj.get("thursday");
-                String friday = (String) openinghoursObj.get("friday");
-
-                // Adding dentist objects created using the fields from the parsed JSON to arraylist
-                Dentist newDentist = new Dentist(id, dentistName, owner, dentistNumber, address, city,
-                        latitude, longitude, monday, tuesday, wednesday, thursday,
-                        friday);
-
-                dentistsRegistry.add(newDentist);
-            } catch (IllegalArgumentException e) {
-                System.err.println("Error when creating new Dentist: " + e.getMessage());
-                System.err.println(dentistObj);
-            } catch (ClassCastException e) {
-                System.err.println("Error when creating new Dentist: " + e.getMessage());
-                System.err.println(dentistObj);
+        if (addedJSON != null) {
+            for (Object booking : addedJSON) {
+                Booking newBooking = makeBooking((JSONObject) booking);
+                if (newBooking != null) {
+                    Booking replacedBooking = bookingRegistry.put(
+                            bookingKey(newBooking.getUserid(), newBooking.getRequestid()), newBooking);
+                    if (replacedBooking != null) {
+                        occupancy.remove(replacedBooking);
+                    }
+                    occupancy.add(newBooking);
+                    reservationLedger.release(bookingKey(newBooking.getUserid(), newBooking.getRequestid()));
+                }
             }
         }
-        this.receivedDentistRegistry = dentistsRegistry;
+        registriesChanged(snapshot.withChangedBookings());
+        reservationLedger.prune(System.currentTimeMillis());
     }
 
-    public void makeBookingArray(MqttMessage message) throws Exception {
-        JSONParser jsonParser = new JSONParser();
-        Object jsonObject = jsonParser.parse(message.toString());
-        JSONObject bookingObj = (JSONObject) jsonObject;
-        JSONArray bookingsJSON = (JSONArray) bookingObj.get("bookings");
+    /**
+     * Creates a booking from its JSON representation.
+     * @param bObj parsed booking
+     * @return the booking, or null if the booking is invalid
+     */
+    private Booking makeBooking(JSONObject bObj) {
+        try {
+            long userid = (Long) bObj.get("userid");
+            long requestid = (Long) bObj.get("requestid");
+            long dentistid = (Long) bObj.get("dentistid");
+            long issuance = (Long) bObj.get("issuance");
+            String time = (String) bObj.get("time");
+
+            // Creating a booking object using the fields from the parsed JSON
+            return new Booking(userid, requestid, dentistid, issuance, time);
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Error when adding new Booking: {}", e.getMessage());
+        } catch (ClassCastException e) {
+            LOG.warn("Error when adding new Booking: {}", e.getMessage());
+        }
+        return null;
+    }
 
-        ArrayList<Booking> bookingsRegistry = new ArrayList<>();
+    /**
+     * Rebuilds the reservations from the decisions in the log, leaving out the ones that have expired or are already
+     * in the booking registry, and logs every decision from then on. Call it before any requests are decided.
+     * @param log decision log
+     * @throws IOException thrown when the log cannot be read
+     */
+    public synchronized void setDecisionLog(DecisionLog log) throws IOException {
+        long now = System.currentTimeMillis();
+        int replayed = log.replay(reservationLedger::reserve, now - RESERVATION_TTL_MILLIS);
+        reservationLedger.reconcile(registries.getBookings(), now);
+        LOG.info("Replayed {} accepted decisions, {} are still reserved", replayed, reservationLedger.size());
+        log.compact(reservationLedger);
+        decisionLog = log;
+    }
 
-        for (Object booking : bookingsJSON) {
-            JSONObject bObj = (JSONObject) booking;
+    /**
+     * Releases the reservations of dental offices that another instance of the Cluster handles now, and drops them
+     * from the decision log.
+     * @param dentists selects the dental offices that have moved by id
+     * @return the released reservations in the format { "reservations": [ reservations ] }, or null if there are none
+     */
+    public synchronized String handOffReservations(LongPredicate dentists) {
+        List<Map<String, Long>> handedOff = new ArrayList<>();
+        reservationLedger.releaseIf(dentists, (bookingKey, dentistid, epochMinute, reservedAt) -> {
+            Map<String, Long> reservation = new LinkedHashMap<>();
+            reservation.put("bookingKey", bookingKey);
+            reservation.put("dentistid", dentistid);
+            reservation.put("epochMinute", epochMinute);
+            reservation.put("reservedAt", reservedAt);
+            handedOff.add(reservation);
+        });
+        if (handedOff.isEmpty()) {
+            return null;
+        }
+        DecisionLog log = decisionLog;
+        if (log != null) {
+            log.compact(reservationLedger);
+        }
+        return JSONObject.toJSONString(Collections.singletonMap("reservations", handedOff));
+    }
+
+    /**
+     * Reserves the chairs of accepted bookings handed over by another instance of the Cluster. They keep the time
+     * they were first reserved at, so they expire as they would have there.
+     * @param message incoming MqttMessage created by handOffReservations
+     * @param dentists selects the dental offices this instance handles, reservations of other ones are skipped
+     * @return the number of reservations taken over
+     * @throws Exception thrown when the message cannot be parsed
+     */
+    public synchronized int takeOverReservations(MqttMessage message, LongPredicate dentists) throws Exception {
+        JSONObject handOff = (JSONObject) new JSONParser().parse(message.toString());
+        JSONArray reservations = (JSONArray) handOff.get("reservations");
+        int takenOver = 0;
+        for (Object reservation : reservations) {
+            JSONObject rObj = (JSONObject) reservation;
             try {
-                long userid = (Long) bObj.get("userid");
-                long requestid = (Long) bObj.get("requestid");
-                long dentistid = (Long) bObj.get("dentistid");
-                long issuance = (Long) bObj.get("issuance");
-                String time = (String) bObj.get("time");
-
-                // Creating a booking object using the fields from the parsed JSON
-                Booking newBooking = new Booking(userid, requestid, dentistid, issuance, time);
-
-                bookingsRegistry.add(newBooking);
-            } catch (IllegalArgumentException e) {
-                System.err.println("Error when adding new Booking: " + e.getMessage());
-            } catch (ClassCastException e) {
-                System.err.println("Error when adding new Booking: " + e.getMessage());
+                long dentistid = (Long) rObj.get("dentistid");
+                if (dentists.test(dentistid)) {
+                    reservationLedger.reserve((Long) rObj.get("bookingKey"), dentistid,
+                            (Long) rObj.get("epochMinute"), (Long) rObj.get("reservedAt"));
+                    takenOver++;
+                }
+            } catch (ClassCastException | NullPointerException e) {
+                LOG.warn("Error when taking over reservation: {}", rObj);
             }
         }
-        this.receivedBookingRegistry = bookingsRegistry;
+        reservationLedger.prune(System.currentTimeMillis());
+        DecisionLog log = decisionLog;
+        if (log != null && takenOver > 0) {
+            log.compact(reservationLedger);
+        }
+        return takenOver;
+    }
+
+    /**
+     * Replaces both registries with ones kept from before a restart, see RegistryFile. They are used until the next
+     * Dentists and BookingRegistry messages replace them.
+     * @param snapshot registries read from the registry file
+     */
+    public synchronized void restoreRegistries(RegistrySnapshot snapshot) {
+        registriesChanged(snapshot);
+    }
+
+    private void registriesChanged(RegistrySnapshot snapshot) {
+        registries = snapshot;
+        availabilityCache.clear();
+    }
+
+    /**
+     * @return the registries that requests are currently decided against
+     */
+    public RegistrySnapshot getRegistries() {
+        return registries;
     }
 
-    public void makeReceivedBooking(Object message) throws ParseException, ClassCastException {
+    /**
+     * Reads the payload bytes of a message directly, without turning them into a String first.
+     */
+    private static Reader payloadReader(MqttMessage message) {
+        return new InputStreamReader(new ByteArrayInputStream(message.getPayload()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A booking is identified by the user who made it and the user's request id.
+     * User ids have at most six digits and request ids at most five, so both fit in one long.
+     */
+    static long bookingKey(long userid, long requestid) {
+        return userid * 100000 + requestid;
+    }
+
+    /**
+     * Creates a booking request from an incoming message. A request with invalid fields is returned already rejected.
+     * @param message incoming MqttMessage containing a booking request
+     * @return the booking request
+     * @throws ParseException thrown when the message cannot be parsed
+     */
+    public ReceivedBooking makeReceivedBooking(Object message) throws ParseException, ClassCastException {
         JSONParser jsonParser = new JSONParser();
         ReceivedBooking newBooking = new ReceivedBooking();
         Object jsonObject = jsonParser.parse(message.toString());
@@ -245,54 +470,202 @@ public class Filter implements Supplier<ReceivedBooking>  {
         	// Creating a booking object using the fields from the parsed JSON
         	newBooking = new ReceivedBooking(userid, requestid, dentistid, issuance, time);
         } catch (IllegalArgumentException e){
-        	System.err.println("Booking will be rejected: " + e.getMessage());
+        	LOG.debug("Booking will be rejected: {}", e.getMessage());
             newBooking = new ReceivedBooking((Long) parser.get("userid"), (Long) parser.get("requestid"), "none");
         }
-        this.receivedBooking = newBooking;
+        return newBooking;
     }
 
-    private void setSuccessfulBooking(ReceivedBooking requestBooking) {
+    private ReceivedBooking makeSuccessfulBooking(ReceivedBooking requestBooking) {
         ReceivedBooking acceptedBooking = new ReceivedBooking(requestBooking.getUserid(), requestBooking.getRequestid(), requestBooking.getDentistid(), requestBooking.getIssuance(), requestBooking.getTime());
-        this.receivedBooking = acceptedBooking;
-        System.out.println("ACCEPTED");
-
+        LOG.debug("ACCEPTED {}", requestBooking.getRequestid());
+        return acceptedBooking;
     }
 
-    private void setRejectedBooking(ReceivedBooking requestBooking) {
+    private ReceivedBooking makeRejectedBooking(ReceivedBooking requestBooking) {
         ReceivedBooking rejectedBooking = new ReceivedBooking(requestBooking.getUserid(), requestBooking.getRequestid(), "none");
-        this.receivedBooking = rejectedBooking;
-        System.out.println("REJECTED");
+        LOG.debug("REJECTED {}", requestBooking.getRequestid());
+        return rejectedBooking;
     }
 
     /**
-     * Sets the selected date from an incoming message.
-     * @param message incoming MqttMessage containing a selected date
+     * Reads the selected dates from an incoming message.
+     * The message either has a single "date", or a "from" and "to" date to select every day in that range,
+     * e.g. { "from": "2020-12-14", "to": "2020-12-18" } for a week view.
+     * An optional "encoding" of "binary" selects the compact binary free-slots payload instead of JSON.
+     * @param message incoming MqttMessage containing a selected date or date range
+     * @return the selected dates
      * @throws ParseException thrown when date cannot be parsed
      */
-    public void setSelectedDate (MqttMessage message) throws ParseException {
+    public SelectedDates makeSelectedDates(MqttMessage message) throws ParseException {
         JSONParser jsonParser = new JSONParser();
         Object jsonObject = jsonParser.parse(message.toString());
         JSONObject parser = (JSONObject) jsonObject;
 
-        String stringDate = (String) parser.get("date");
-        LocalDate selectedDate = LocalDate.parse(stringDate, DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        LocalDate selectedDate;
+        LocalDate selectedEndDate;
+        if (parser.containsKey("date")) {
+            selectedDate = LocalDate.parse((String) parser.get("date"), DATE_FORMAT);
+            selectedEndDate = selectedDate;
+        } else {
+            selectedDate = LocalDate.parse((String) parser.get("from"), DATE_FORMAT);
+            selectedEndDate = LocalDate.parse((String) parser.get("to"), DATE_FORMAT);
+        }
 
-        this.receivedSelectedDate = selectedDate;
+        long selectedDays = selectedDate.until(selectedEndDate, ChronoUnit.DAYS) + 1;
+        if (selectedDays < 1 || selectedDays > MAX_SELECTED_DAYS) {
+            throw new IllegalArgumentException("Date range has to be between one and " + MAX_SELECTED_DAYS +
+                    " days long: " + selectedDate + " - " + selectedEndDate);
+        }
+
+        return new SelectedDates(selectedDate, selectedEndDate,
+                FreeSlotsEncoding.of((String) parser.get("encoding")));
     }
 
     /**
-     * Creates schedules for each dental office and sets the availability based on booking registry.
+     * Sets the number of worker threads used to create schedules. With one worker the schedules are created on the
+     * calling thread, with more they are created in parallel in a fork/join pool.
+     * @param workers number of worker threads
+     */
+    public void setAvailabilityWorkers(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Number of availability workers has to be at least one: " + workers);
+        }
+        ForkJoinPool oldPool = availabilityPool;
+        availabilityPool = workers > 1 ? new ForkJoinPool(workers) : null;
+        if (oldPool != null) {
+            oldPool.shutdown();
+        }
+    }
+
+    /**
+     * Creates schedules for each dental office and each selected day and sets the availability based on the
+     * occupancy index of the booking registry. The schedules are ordered by day and then in the same order as the
+     * dentist registry, also when they are created in parallel.
+     * @param selectedDates dates to create schedules for
      * @return the available slots which will be published ready to be used by the frontend
      */
-    public ArrayList<Schedule> getAvailability() {
+    public ArrayList<Schedule> getAvailability(SelectedDates selectedDates) {
+        return getAvailability(selectedDates, registries);
+    }
+
+    private ArrayList<Schedule> getAvailability(SelectedDates selectedDates, RegistrySnapshot snapshot) {
+        List<Dentist> dentists = snapshot.getDentists();
+        OccupancyIndex occupancy = snapshot.getOccupancy();
+        LocalDate selectedDate = selectedDates.getFirstDate();
+        int selectedDays = selectedDates.getDays();
+        ForkJoinPool pool = availabilityPool;
+
+        if (pool != null) {
+            Schedule[] schedules = new Schedule[dentists.size() * selectedDays];
+            pool.invoke(new ScheduleTask(dentists, selectedDate, occupancy, schedules, 0, schedules.length));
+            return new ArrayList<>(Arrays.asList(schedules));
+        }
+
         ArrayList<Schedule> schedules = new ArrayList<>();
 
-        for (Object dentist : receivedDentistRegistry) {
-            Schedule schedule = new Schedule((Dentist) dentist, receivedSelectedDate);
-            schedule.setUnavailableTimeSlots(receivedBookingRegistry);
-            schedules.add(schedule);
+        for (int day = 0; day < selectedDays; day++) {
+            for (Dentist dentist : dentists) {
+                Schedule schedule = new Schedule(dentist, selectedDate.plusDays(day));
+                schedule.setUnavailableTimeSlots(occupancy);
+                schedules.add(schedule);
+            }
+        }
+
+        return schedules;
+    }
+
+    /**
+     * Reads the point, date and number of offices from an incoming message, e.g.
+     * { "latitude": 57.7089, "longitude": 11.9746, "date": "2020-12-14", "count": 5 }.
+     * The count is optional, by default the five nearest offices are selected.
+     * @param message incoming MqttMessage containing a NearestAvailabilityRequest
+     * @return the selected point, date and number of offices
+     * @throws ParseException thrown when the message cannot be parsed
+     */
+    public NearestOffices makeNearestOffices(MqttMessage message) throws ParseException {
+        JSONObject parser = (JSONObject) new JSONParser().parse(message.toString());
+
+        double latitude = ((Number) parser.get("latitude")).doubleValue();
+        double longitude = ((Number) parser.get("longitude")).doubleValue();
+        if (!(latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("Coordinate is out of range: " + latitude + ", " + longitude);
         }
+        LocalDate date = LocalDate.parse((String) parser.get("date"), DATE_FORMAT);
+        Number count = (Number) parser.get("count");
+        int offices = count != null ? count.intValue() : DEFAULT_NEAREST_OFFICES;
+        if (offices < 1 || offices > MAX_NEAREST_OFFICES) {
+            throw new IllegalArgumentException("Count has to be between one and " + MAX_NEAREST_OFFICES + ": " +
+                    offices);
+        }
+        return new NearestOffices(latitude, longitude, date, offices);
+    }
 
+    /**
+     * Finds the nearest dental offices with at least one free time slot on the selected date, using the OfficeIndex
+     * of the dentist registry. Schedules are only created for the offices nearer than the last one found, instead of
+     * for every office like getFreeSlots does.
+     * @param nearestOffices point, date and number of offices selected in the request
+     * @return the schedules of the offices found, nearest first
+     */
+    public ArrayList<Schedule> getNearestAvailability(NearestOffices nearestOffices) {
+        RegistrySnapshot snapshot = registries;
+        OccupancyIndex occupancy = snapshot.getOccupancy();
+        ArrayList<Schedule> schedules = new ArrayList<>(nearestOffices.getCount());
+        snapshot.getOfficeIndex().nearest(nearestOffices.getLatitude(), nearestOffices.getLongitude(),
+                nearestOffices.getCount(), dentist -> {
+                    Schedule schedule = new Schedule(dentist, nearestOffices.getDate());
+                    schedule.setUnavailableTimeSlots(occupancy);
+                    if (schedule.getSlotGrid().countFreeChairs() == 0) {
+                        return false;
+                    }
+                    schedules.add(schedule);
+                    return true;
+                });
         return schedules;
     }
+
+    /**
+     * Creates the free-slots payload of the nearest dental offices with a free time slot, in the same format as
+     * getFreeSlots, with the offices nearest first.
+     * @param nearestOffices point, date and number of offices selected in the request
+     * @return the available slots of the offices found as JSON
+     */
+    public byte[] getNearestFreeSlots(NearestOffices nearestOffices) {
+        return JsonWriter.forThread().freeSlots(getNearestAvailability(nearestOffices));
+    }
+
+    /**
+     * Creates the free-slots payload for the selected dates. Payloads are cached until one of the registries changes.
+     * @param selectedDates dates to create schedules for
+     * @return the available slots of every dental office as JSON, ready to be used by the frontend, see JsonWriter,
+     * or in the binary encoding when it has been selected, see FreeSlotsCodec
+     */
+    public byte[] getFreeSlots(SelectedDates selectedDates) {
+        RegistrySnapshot snapshot = registries;
+        byte[] freeSlots = availabilityCache.get(selectedDates, snapshot.getDentistVersion(), snapshot.getBookingVersion());
+
+        if (freeSlots == null) {
+            ArrayList<Schedule> schedules = getAvailability(selectedDates, snapshot);
+            if (selectedDates.getEncoding() == FreeSlotsEncoding.BINARY) {
+                freeSlots = FreeSlotsCodec.encode(schedules);
+            } else {
+                freeSlots = JsonWriter.forThread().freeSlots(schedules);
+            }
+            availabilityCache.put(selectedDates, snapshot.getDentistVersion(), snapshot.getBookingVersion(), freeSlots);
+        }
+        return freeSlots;
+    }
+
+    public ReservationLedger getReservationLedger() {
+        return reservationLedger;
+    }
+
+    public StripedLruCache<Long, ReceivedBooking> getDecisionCache() {
+        return decisionCache;
+    }
+
+    public AvailabilityCache getAvailabilityCache() {
+        return availabilityCache;
+    }
 }
@@ -0,0 +1,154 @@
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FreeSlotsCodec is the compact binary encoding of the free-slots payload.
+ * Instead of a startTime/endTime pair per free chair it sends the slot grid of each schedule.
+ *
+ * All numbers are big-endian. The payload starts with a header:
+ * magic "FS" (2 bytes), version (1 byte), number of schedules (4 bytes).
+ * Each schedule follows as: dentist id (2 bytes), date as epoch day (4 bytes), opening minute (2 bytes),
+ * slot duration in minutes (1 byte), number of slots (1 byte), a bitmap with one bit per slot that is set when
+ * the slot has a free chair (one byte per eight slots, first slot in the highest bit), and the number of free
+ * chairs of every slot whose bit is set (1 byte each).
+ *
+ * Requests that are shed by admission control are answered on the binary topic too, with the JSON busy reply of
+ * JsonWriter.busy, which starts with '{' instead of the magic.
+ */
+public final class FreeSlotsCodec {
+    private static final byte MAGIC_F = 'F';
+    private static final byte MAGIC_S = 'S';
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 7;
+    private static final int SCHEDULE_BYTES = 10; // Fixed part of a schedule, before the bitmap
+
+    private FreeSlotsCodec() {
+    }
+
+    /**
+     * @param schedules schedules of the selected dates
+     * @return the binary payload
+     */
+    public static byte[] encode(List<Schedule> schedules) {
+        int size = HEADER_BYTES;
+        for (Schedule schedule : schedules) {
+            SlotGrid slotGrid = schedule.getSlotGrid();
+            size += SCHEDULE_BYTES + bitmapBytes(slotGrid.getSlotCount());
+            for (int slot = 0; slot < slotGrid.getSlotCount(); slot++) {
+                if (slotGrid.getFreeChairs(slot) > 0) {
+                    size++;
+                }
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(MAGIC_F).put(MAGIC_S).put(VERSION).putInt(schedules.size());
+        for (Schedule schedule : schedules) {
+            SlotGrid slotGrid = schedule.getSlotGrid();
+            int slots = slotGrid.getSlotCount();
+            buffer.putShort((short) schedule.getDentist().getId())
+                    .putInt((int) schedule.getSelectedDate().toEpochDay())
+                    .putShort((short) slotGrid.getOpeningMinute())
+                    .put((byte) slotGrid.getSlotDuration())
+                    .put((byte) slots);
+
+            for (int first = 0; first < slots; first += 8) {
+                int bits = 0;
+                for (int slot = first; slot < Math.min(first + 8, slots); slot++) {
+                    if (slotGrid.getFreeChairs(slot) > 0) {
+                        bits |= 0x80 >>> (slot - first);
+                    }
+                }
+                buffer.put((byte) bits);
+            }
+            for (int slot = 0; slot < slots; slot++) {
+                if (slotGrid.getFreeChairs(slot) > 0) {
+                    buffer.put((byte) slotGrid.getFreeChairs(slot));
+                }
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @param payload binary payload created by encode
+     * @return the decoded schedules, in the order they were encoded
+     * @throws IllegalArgumentException if the payload is not a binary free-slots payload or is truncated
+     */
+    public static List<DecodedSchedule> decode(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        if (buffer.remaining() < HEADER_BYTES || buffer.get() != MAGIC_F || buffer.get() != MAGIC_S) {
+            throw new IllegalArgumentException("Payload is not a binary free-slots payload");
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported free-slots encoding version: " + version);
+        }
+
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / SCHEDULE_BYTES) {
+            throw new IllegalArgumentException("Free-slots payload is truncated: " + count + " schedules announced");
+        }
+        List<DecodedSchedule> schedules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            requireRemaining(buffer, SCHEDULE_BYTES);
+            long dentistid = buffer.getShort() & 0xFFFF;
+            LocalDate date = LocalDate.ofEpochDay(buffer.getInt());
+            int openingMinute = buffer.getShort() & 0xFFFF;
+            int slotDuration = buffer.get() & 0xFF;
+            int slots = buffer.get() & 0xFF;
+
+            byte[] bitmap = new byte[bitmapBytes(slots)];
+            requireRemaining(buffer, bitmap.length);
+            buffer.get(bitmap);
+            byte[] freeChairs = new byte[slots];
+            for (int slot = 0; slot < slots; slot++) {
+                if ((bitmap[slot / 8] & (0x80 >>> (slot % 8))) != 0) {
+                    requireRemaining(buffer, 1);
+                    freeChairs[slot] = buffer.get();
+                }
+            }
+            schedules.add(new DecodedSchedule(dentistid, date, new SlotGrid(openingMinute, slotDuration, freeChairs)));
+        }
+        return schedules;
+    }
+
+    private static void requireRemaining(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() < bytes) {
+            throw new IllegalArgumentException("Free-slots payload is truncated at byte " + buffer.position());
+        }
+    }
+
+    private static int bitmapBytes(int slots) {
+        return (slots + 7) / 8;
+    }
+
+    /**
+     * A schedule read from a binary free-slots payload.
+     */
+    public static final class DecodedSchedule {
+        private final long dentistid;
+        private final LocalDate date;
+        private final SlotGrid slotGrid;
+
+        public DecodedSchedule(long dentistid, LocalDate date, SlotGrid slotGrid) {
+            this.dentistid = dentistid;
+            this.date = date;
+            this.slotGrid = slotGrid;
+        }
+
+        public long getDentistid() {
+            return dentistid;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public SlotGrid getSlotGrid() {
+            return slotGrid;
+        }
+    }
+}
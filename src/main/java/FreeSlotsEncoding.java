@@ -0,0 +1,33 @@
+/**
+ * Encodings of the free-slots payload. An AvailabilityRequest selects one with its optional "encoding" field.
+ */
+public enum FreeSlotsEncoding {
+    JSON("free-slots"), // Default, read by the frontend
+    BINARY("free-slots/binary"); // See FreeSlotsCodec
+
+    private final String topic;
+
+    FreeSlotsEncoding(String topic) {
+        this.topic = topic;
+    }
+
+    /**
+     * @return the topic that payloads in this encoding are published to
+     */
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * @param name encoding field of an AvailabilityRequest, null when the request has none
+     * @return the selected encoding
+     */
+    public static FreeSlotsEncoding of(String name) {
+        if (name == null || name.equals("json")) {
+            return JSON;
+        } else if (name.equals("binary")) {
+            return BINARY;
+        }
+        throw new IllegalArgumentException("Encoding has to be json or binary: " + name);
+    }
+}
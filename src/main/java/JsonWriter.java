@@ -0,0 +1,212 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * JsonWriter writes the responses of the Availability component straight into a reusable byte buffer.
+ * The output is byte for byte the same as the toString methods of Schedule, TimeSlot and ReceivedBooking, without
+ * creating the Strings in between.
+ *
+ * A writer is not thread-safe, forThread returns one writer per thread. The returned payloads are copies, so they
+ * stay valid while the buffer is reused. A buffer that has grown past MAX_RETAINED_CAPACITY for a large payload is
+ * dropped after it, so every thread only keeps a small buffer between payloads.
+ */
+public final class JsonWriter {
+    private static final int INITIAL_CAPACITY = 8192;
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024; // Largest buffer kept for the next payload
+    private static final ThreadLocal<JsonWriter> WRITERS = ThreadLocal.withInitial(JsonWriter::new);
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int length;
+
+    /**
+     * @return the writer of the calling thread
+     */
+    public static JsonWriter forThread() {
+        return WRITERS.get();
+    }
+
+    /**
+     * Writes the free-slots payload, the same as "{ \"schedules\": " + schedules.toString() + "}".
+     * @param schedules schedules of the selected dates
+     * @return the payload
+     */
+    public byte[] freeSlots(List<Schedule> schedules) {
+        length = 0;
+        writeAscii("{ \"schedules\": [");
+        for (int i = 0; i < schedules.size(); i++) {
+            if (i > 0) {
+                writeAscii(", ");
+            }
+            writeSchedule(schedules.get(i));
+        }
+        writeAscii("]}");
+        return toByteArray();
+    }
+
+    /**
+     * Writes the SuccessfulBooking payload, the same as ReceivedBooking.toString.
+     * @param booking accepted booking
+     * @return the payload
+     */
+    public byte[] successfulBooking(ReceivedBooking booking) {
+        length = 0;
+        writeAscii("\n{\n\"userid\": ");
+        writeLong(booking.getUserid());
+        writeAscii(",\n\"requestid\": ");
+        writeLong(booking.getRequestid());
+        writeAscii(",\n\"dentistid\": ");
+        writeLong(booking.getDentistid());
+        writeAscii(",\n\"issuance\": ");
+        writeLong(booking.getIssuance());
+        writeAscii(",\n\"time\": \"");
+        writeAscii(booking.getTime());
+        writeAscii("\"\n}\n");
+        return toByteArray();
+    }
+
+    /**
+     * Writes the BookingResponse payload, the same as ReceivedBooking.getBookingResponse.
+     * @param booking rejected booking
+     * @return the payload
+     */
+    public byte[] bookingResponse(ReceivedBooking booking) {
+        length = 0;
+        writeAscii("\n{\n\"userid\": ");
+        writeLong(booking.getUserid());
+        writeAscii(",\n\"requestid\": ");
+        writeLong(booking.getRequestid());
+        writeAscii(",\n\"time\": \"");
+        writeAscii(booking.getTime());
+        writeAscii("\"\n}\n");
+        return toByteArray();
+    }
+
+    /**
+     * Writes the reply to an availability request that was shed without being answered, e.g.
+     * { "schedules": [], "busy": "QUEUE_FULL", "from": "2020-12-14", "to": "2020-12-18" }.
+     * It has no schedules, so readers of free-slots payloads see no free slots, and busy tells the user to ask again.
+     * @param reason why the request was shed, e.g. QUEUE_FULL or RATE_LIMITED
+     * @param firstDate first date of the request
+     * @param lastDate last date of the request
+     * @return the payload
+     */
+    public byte[] busy(String reason, LocalDate firstDate, LocalDate lastDate) {
+        length = 0;
+        writeAscii("{ \"schedules\": [], \"busy\": \"");
+        writeAscii(reason);
+        writeAscii("\", \"from\": \"");
+        writeDate(firstDate);
+        writeAscii("\", \"to\": \"");
+        writeDate(lastDate);
+        writeAscii("\" }");
+        return toByteArray();
+    }
+
+    /**
+     * Writes a schedule like Schedule.toString, listing each free chair of each time slot.
+     */
+    private void writeSchedule(Schedule schedule) {
+        SlotGrid slotGrid = schedule.getSlotGrid();
+        int duration = slotGrid.getSlotDuration();
+
+        writeAscii("{ \"dentist\": ");
+        writeLong(schedule.getDentist().getId());
+        writeAscii(", \"date\": \"");
+        writeDate(schedule.getSelectedDate());
+        writeAscii("\", \"timeSlots\": [");
+        boolean first = true;
+        for (int slot = 0; slot < slotGrid.getSlotCount(); slot++) {
+            int startMinute = slotGrid.getStartMinute(slot);
+            int endMinute = (startMinute + duration) % BookingTime.MINUTES_PER_DAY;
+            for (int chair = 0; chair < slotGrid.getFreeChairs(slot); chair++) {
+                if (!first) {
+                    writeAscii(", ");
+                }
+                first = false;
+                writeAscii("{ \"startTime\": \"");
+                writeMinuteOfDay(startMinute);
+                writeAscii("\", \"endTime\": \"");
+                writeMinuteOfDay(endMinute);
+                writeAscii("\" }");
+            }
+        }
+        writeAscii("]}\n");
+    }
+
+    /**
+     * Writes a date as yyyy-MM-dd, like LocalDate.toString for years 1000 to 9999.
+     */
+    private void writeDate(LocalDate date) {
+        if (date.getYear() < 1000 || date.getYear() > 9999) {
+            writeAscii(date.toString());
+            return;
+        }
+        writeLong(date.getYear());
+        write('-');
+        writeTwoDigits(date.getMonthValue());
+        write('-');
+        writeTwoDigits(date.getDayOfMonth());
+    }
+
+    /**
+     * Writes a time of day as HH:mm, like LocalTime.toString for whole minutes.
+     */
+    private void writeMinuteOfDay(int minuteOfDay) {
+        writeTwoDigits(minuteOfDay / 60);
+        write(':');
+        writeTwoDigits(minuteOfDay % 60);
+    }
+
+    private void writeTwoDigits(int value) {
+        ensureCapacity(2);
+        buffer[length++] = (byte) ('0' + value / 10);
+        buffer[length++] = (byte) ('0' + value % 10);
+    }
+
+    private void writeLong(long value) {
+        if (value < 0) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    /**
+     * Writes a String that only contains ASCII characters, which all fixed parts of the responses do.
+     */
+    private void writeAscii(String text) {
+        ensureCapacity(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            buffer[length++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void write(char c) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) c;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    private byte[] toByteArray() {
+        byte[] payload = Arrays.copyOf(buffer, length);
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+        return payload;
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LruCache keeps a bounded number of entries and evicts the least recently used one when it is full.
+ * It counts the hits and misses of get, so the caches built on it can be watched through the metrics.
+ * All methods are synchronized, values are shared between the threads that get them and must not be changed.
+ * @param <K> type of the keys, with equals and hashCode
+ * @param <V> type of the values
+ */
+public class LruCache<K, V> {
+    private final int maxEntries;
+    private final LinkedHashMap<K, V> entries;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxEntries the maximum number of entries kept in the cache
+     */
+    public LruCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > LruCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param key key of the entry
+     * @return the cached value, or null if there is none
+     */
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the share of gets answered from the cache, 0 before any get
+     */
+    public synchronized double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
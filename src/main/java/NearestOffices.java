@@ -0,0 +1,43 @@
+import java.time.LocalDate;
+
+/**
+ * The point, date and number of offices selected in a NearestAvailabilityRequest: the nearest dental offices to the
+ * point that have a free time slot on the date.
+ */
+public final class NearestOffices {
+    private final double latitude;
+    private final double longitude;
+    private final LocalDate date;
+    private final int count;
+
+    public NearestOffices(double latitude, double longitude, LocalDate date, int count) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.date = date;
+        this.count = count;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    /**
+     * @return the maximum number of offices to answer with
+     */
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return count + " nearest to " + latitude + ", " + longitude + " on " + date;
+    }
+}
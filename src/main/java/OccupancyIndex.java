@@ -0,0 +1,99 @@
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * OccupancyIndex keeps track of how many chairs are booked at each dental office and time.
+ * It is built once when a booking registry is received, so a booking request can be checked with a lookup
+ * instead of scanning the whole registry.
+ *
+ * Counts can be read from any thread while booking registry deltas update them, every count is read and updated
+ * atomically.
+ */
+public class OccupancyIndex {
+    private static final long DENTIST_IDS = 10000; // Dentist ids have at most four digits
+
+    // (booking time, dentist id) -> number of bookings at that time, see key
+    private final ConcurrentHashMap<Long, Integer> bookedChairs;
+    private final AtomicInteger size = new AtomicInteger();
+
+    public OccupancyIndex() {
+        bookedChairs = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Builds the index from a booking registry.
+     * @param bookings bookings to index
+     */
+    public OccupancyIndex(Collection<Booking> bookings) {
+        this();
+        for (Booking booking : bookings) {
+            add(booking);
+        }
+    }
+
+    /**
+     * Counts a booking as one taken chair at its dental office and time.
+     * @param booking booking to add
+     */
+    public void add(Booking booking) {
+        add(booking.getDentistid(), booking.getEpochMinute());
+    }
+
+    /**
+     * Counts one taken chair at a dental office and time.
+     * @param dentistid id of the dental office
+     * @param epochMinute booking time in epoch minutes, see BookingTime
+     */
+    public void add(long dentistid, long epochMinute) {
+        bookedChairs.merge(key(dentistid, epochMinute), 1, Integer::sum);
+        size.incrementAndGet();
+    }
+
+    /**
+     * Frees the chair taken by a booking, e.g. when the booking has been cancelled.
+     * @param booking booking to remove
+     */
+    public void remove(Booking booking) {
+        remove(booking.getDentistid(), booking.getEpochMinute());
+    }
+
+    /**
+     * Frees one taken chair at a dental office and time.
+     * @param dentistid id of the dental office
+     * @param epochMinute booking time in epoch minutes, see BookingTime
+     */
+    public void remove(long dentistid, long epochMinute) {
+        long key = key(dentistid, epochMinute);
+        boolean[] removed = new boolean[1];
+        bookedChairs.computeIfPresent(key, (slot, count) -> {
+            removed[0] = true;
+            return count > 1 ? count - 1 : null;
+        });
+        if (removed[0]) {
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of chairs that are already booked at a dental office at a given time.
+     * @param dentistid id of the dental office
+     * @param epochMinute booking time in epoch minutes, see BookingTime
+     * @return number of bookings, 0 if there are none
+     */
+    public int countBookings(long dentistid, long epochMinute) {
+        Integer count = bookedChairs.get(key(dentistid, epochMinute));
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @return the number of bookings in the index
+     */
+    public int size() {
+        return size.get();
+    }
+
+    private static long key(long dentistid, long epochMinute) {
+        return epochMinute * DENTIST_IDS + dentistid;
+    }
+}
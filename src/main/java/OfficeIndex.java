@@ -0,0 +1,239 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * OfficeIndex finds the dental offices nearest to a point, using a k-d tree over their coordinates.
+ *
+ * The latitude and longitude of each office are turned into a point on the unit sphere, so the straight-line distance
+ * between two points grows with the distance over the earth's surface, and there is no edge at the date line or the
+ * poles. The tree splits the offices at the median of the axis they are most spread along, until at most LEAF_SIZE
+ * are left, and keeps the bounding box of every node.
+ *
+ * A search visits the nodes and offices nearest first, ordered by the distance to their bounding box, so it only
+ * looks at the offices up to the ones it returns and the nodes around them, not at all offices.
+ * An index is immutable, a new one is built with every dentist registry, see RegistrySnapshot.
+ */
+public final class OfficeIndex {
+    private static final int LEAF_SIZE = 8;
+
+    private final Dentist[] offices; // In tree order, each node holds a range of them
+    private final double[] coordinates; // x, y and z of each office on the unit sphere, in tree order
+
+    // Nodes by number, the root is node 0
+    private final int[] nodeStart;
+    private final int[] nodeEnd;
+    private final int[] nodeLeft; // -1 for leaves
+    private final int[] nodeRight;
+    private final double[] nodeBounds; // Minimum and maximum x, y and z of each node
+    private int nodes;
+
+    /**
+     * @param dentists dental offices to index
+     */
+    public OfficeIndex(List<Dentist> dentists) {
+        int count = dentists.size();
+        offices = dentists.toArray(new Dentist[count]);
+        coordinates = new double[count * 3];
+        for (int i = 0; i < count; i++) {
+            toUnitVector(offices[i].getLatitude(), offices[i].getLongitude(), coordinates, i * 3);
+        }
+
+        // Only nodes of more than LEAF_SIZE offices are split, so every leaf holds at least half of LEAF_SIZE
+        int maxNodes = 2 * (count / (LEAF_SIZE / 2) + 1);
+        nodeStart = new int[maxNodes];
+        nodeEnd = new int[maxNodes];
+        nodeLeft = new int[maxNodes];
+        nodeRight = new int[maxNodes];
+        nodeBounds = new double[maxNodes * 6];
+        build(0, count);
+    }
+
+    /**
+     * Finds the nearest dental offices that are accepted, nearest first. The predicate is only called for offices
+     * until enough have been accepted, in the order of their distance, so it can do work per office, like creating
+     * its schedule.
+     * @param latitude latitude of the point
+     * @param longitude longitude of the point
+     * @param count the maximum number of offices to return
+     * @param accepted selects the offices to return
+     * @return up to count accepted offices, nearest first
+     */
+    public List<Dentist> nearest(double latitude, double longitude, int count, Predicate<Dentist> accepted) {
+        List<Dentist> nearest = new ArrayList<>(Math.min(count, offices.length));
+        if (offices.length == 0 || count <= 0) {
+            return nearest;
+        }
+        double[] point = new double[3];
+        toUnitVector(latitude, longitude, point, 0);
+
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+        candidates.add(new Candidate(boxDistance(0, point), 0, -1));
+        while (!candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+            if (candidate.office >= 0) {
+                if (accepted.test(offices[candidate.office])) {
+                    nearest.add(offices[candidate.office]);
+                    if (nearest.size() == count) {
+                        break;
+                    }
+                }
+            } else if (nodeLeft[candidate.node] < 0) {
+                for (int office = nodeStart[candidate.node]; office < nodeEnd[candidate.node]; office++) {
+                    candidates.add(new Candidate(officeDistance(office, point), -1, office));
+                }
+            } else {
+                int left = nodeLeft[candidate.node];
+                int right = nodeRight[candidate.node];
+                candidates.add(new Candidate(boxDistance(left, point), left, -1));
+                candidates.add(new Candidate(boxDistance(right, point), right, -1));
+            }
+        }
+        return nearest;
+    }
+
+    public int size() {
+        return offices.length;
+    }
+
+    /**
+     * Builds the node holding the offices from start to end and the nodes below it.
+     * @return the number of the node
+     */
+    private int build(int start, int end) {
+        int node = nodes++;
+        nodeStart[node] = start;
+        nodeEnd[node] = end;
+        nodeLeft[node] = -1;
+        nodeRight[node] = -1;
+
+        int bounds = node * 6;
+        for (int axis = 0; axis < 3; axis++) {
+            nodeBounds[bounds + axis] = Double.POSITIVE_INFINITY;
+            nodeBounds[bounds + 3 + axis] = Double.NEGATIVE_INFINITY;
+        }
+        for (int office = start; office < end; office++) {
+            for (int axis = 0; axis < 3; axis++) {
+                double value = coordinates[office * 3 + axis];
+                nodeBounds[bounds + axis] = Math.min(nodeBounds[bounds + axis], value);
+                nodeBounds[bounds + 3 + axis] = Math.max(nodeBounds[bounds + 3 + axis], value);
+            }
+        }
+
+        if (end - start > LEAF_SIZE) {
+            int widest = 0;
+            for (int axis = 1; axis < 3; axis++) {
+                if (nodeBounds[bounds + 3 + axis] - nodeBounds[bounds + axis]
+                        > nodeBounds[bounds + 3 + widest] - nodeBounds[bounds + widest]) {
+                    widest = axis;
+                }
+            }
+            int middle = (start + end) >>> 1;
+            select(start, end, middle, widest);
+            nodeLeft[node] = build(start, middle);
+            nodeRight[node] = build(middle, end);
+        }
+        return node;
+    }
+
+    /**
+     * Reorders the offices from start to end so the one at middle has the median value on the axis, with the
+     * smaller values before it and the larger ones after it.
+     */
+    private void select(int start, int end, int middle, int axis) {
+        int low = start;
+        int high = end - 1;
+        while (low < high) {
+            double pivot = coordinates[((low + high) >>> 1) * 3 + axis];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (coordinates[i * 3 + axis] < pivot) {
+                    i++;
+                }
+                while (coordinates[j * 3 + axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (middle <= j) {
+                high = j;
+            } else if (middle >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int a, int b) {
+        Dentist office = offices[a];
+        offices[a] = offices[b];
+        offices[b] = office;
+        for (int axis = 0; axis < 3; axis++) {
+            double value = coordinates[a * 3 + axis];
+            coordinates[a * 3 + axis] = coordinates[b * 3 + axis];
+            coordinates[b * 3 + axis] = value;
+        }
+    }
+
+    /**
+     * @return the squared straight-line distance from the point to the nearest point of the node's bounding box
+     */
+    private double boxDistance(int node, double[] point) {
+        double distance = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            double min = nodeBounds[node * 6 + axis];
+            double max = nodeBounds[node * 6 + 3 + axis];
+            if (point[axis] < min) {
+                distance += squared(min - point[axis]);
+            } else if (point[axis] > max) {
+                distance += squared(point[axis] - max);
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * @return the squared straight-line distance from the point to the office
+     */
+    private double officeDistance(int office, double[] point) {
+        return squared(coordinates[office * 3] - point[0]) + squared(coordinates[office * 3 + 1] - point[1])
+                + squared(coordinates[office * 3 + 2] - point[2]);
+    }
+
+    private static void toUnitVector(double latitude, double longitude, double[] vector, int offset) {
+        double lat = Math.toRadians(latitude);
+        double lon = Math.toRadians(longitude);
+        vector[offset] = Math.cos(lat) * Math.cos(lon);
+        vector[offset + 1] = Math.cos(lat) * Math.sin(lon);
+        vector[offset + 2] = Math.sin(lat);
+    }
+
+    private static double squared(double value) {
+        return value * value;
+    }
+
+    /**
+     * A node or an office waiting to be visited, ordered by its squared distance to the point searched for.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        private final double distance;
+        private final int node; // -1 for offices
+        private final int office; // -1 for nodes
+
+        private Candidate(double distance, int node, int office) {
+            this.distance = distance;
+            this.node = node;
+            this.office = office;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(distance, other.distance);
+        }
+    }
+}
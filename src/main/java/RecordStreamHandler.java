@@ -0,0 +1,122 @@
+import org.json.simple.parser.ContentHandler;
+
+import java.util.ArrayDeque;
+
+/**
+ * RecordStreamHandler receives the events of the streaming json-simple parser for messages in the format
+ * { "recordArrayKey": [ { record }, { record }, ... ] } and passes each field of a record on as it is read.
+ * This way records can be created one at a time without first building the whole JSON document in memory.
+ *
+ * Fields of objects nested in a record (e.g. "coordinate") are passed on with their own key.
+ */
+public abstract class RecordStreamHandler implements ContentHandler {
+    private static final int RECORD_ARRAY_DEPTH = 2;
+    private static final int RECORD_DEPTH = 3;
+
+    private final String recordArrayKey;
+    private final ArrayDeque<String> keys = new ArrayDeque<>();
+    private int depth;
+    private boolean inRecordArray;
+    private boolean inRecord;
+    private boolean recordArrayFound;
+
+    protected RecordStreamHandler(String recordArrayKey) {
+        this.recordArrayKey = recordArrayKey;
+    }
+
+    /**
+     * Called when a new record starts.
+     */
+    protected abstract void startRecord();
+
+    /**
+     * Called for every value in the current record.
+     * @param key key of the value
+     * @param value String, Long, Double, Boolean or null as read by the parser
+     */
+    protected abstract void field(String key, Object value);
+
+    /**
+     * Called when all fields of the current record have been read.
+     */
+    protected abstract void endRecord();
+
+    /**
+     * @return true if the message contained the record array
+     */
+    public boolean hasRecordArray() {
+        return recordArrayFound;
+    }
+
+    @Override
+    public void startJSON() {
+        keys.clear();
+        depth = 0;
+        inRecordArray = false;
+        inRecord = false;
+        recordArrayFound = false;
+    }
+
+    @Override
+    public void endJSON() {
+    }
+
+    @Override
+    public boolean startObject() {
+        depth++;
+        if (inRecordArray && depth == RECORD_DEPTH) {
+            inRecord = true;
+            startRecord();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean endObject() {
+        if (inRecord && depth == RECORD_DEPTH) {
+            inRecord = false;
+            endRecord();
+        }
+        depth--;
+        return true;
+    }
+
+    @Override
+    public boolean startObjectEntry(String key) {
+        keys.push(key);
+        return true;
+    }
+
+    @Override
+    public boolean endObjectEntry() {
+        keys.pop();
+        return true;
+    }
+
+    @Override
+    public boolean startArray() {
+        depth++;
+        if (depth == RECORD_ARRAY_DEPTH && recordArrayKey.equals(keys.peek())) {
+            inRecordArray = true;
+            recordArrayFound = true;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean endArray() {
+        if (depth == RECORD_ARRAY_DEPTH) {
+            inRecordArray = false;
+        }
+        depth--;
+        return true;
+    }
+
+    @Override
+    public boolean primitive(Object value) {
+        if (inRecord) {
+            field(keys.peek(), value);
+        }
+        return true;
+    }
+}
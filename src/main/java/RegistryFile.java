@@ -0,0 +1,193 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RegistryFile keeps the dentist and booking registries on disk in a compact binary format, so that after a restart
+ * the component can answer requests from the last registries it had instead of waiting for new registry messages.
+ * The file is written through a FileChannel in large buffers and read in one go. It is not memory-mapped, as a mapping
+ * is only released by the garbage collector, and a mapped file cannot be truncated or replaced on Windows.
+ *
+ * All numbers are big-endian. The file starts with a header:
+ * magic "AVRS" (4 bytes), version (1 byte), number of dental offices (4 bytes), number of bookings (4 bytes).
+ * Each dental office follows as: id (2 bytes), number of dentists (1 byte), latitude and longitude (8 bytes each),
+ * then name, owner, address, city and the opening hours from Monday to Friday as strings.
+ * Each booking follows as: userid (4 bytes), requestid (4 bytes), dentist id (2 bytes), issuance (8 bytes), time in
+ * epoch minutes (4 bytes) and time as a string, so it does not have to be parsed again.
+ * A string is its length (2 bytes) followed by its UTF-8 bytes.
+ */
+public final class RegistryFile {
+    private static final Logger LOG = LoggerFactory.getLogger(RegistryFile.class);
+
+    private static final int MAGIC = 'A' << 24 | 'V' << 16 | 'R' << 8 | 'S';
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 13;
+    private static final int DENTIST_BYTES = 19; // Fixed part of a dental office, before the strings
+    private static final int BOOKING_BYTES = 22; // Fixed part of a booking, before the time
+    private static final int WRITE_BUFFER_BYTES = 256 * 1024;
+
+    private final Path path;
+
+    /**
+     * @param path file the registries are kept in
+     */
+    public RegistryFile(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Writes the registries to a temporary file that then replaces the file, so a crash while writing leaves the
+     * previous registries in place.
+     * @param snapshot registries to write
+     * @throws IOException thrown when the file cannot be written
+     */
+    public void write(RegistrySnapshot snapshot) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+            buffer.putInt(MAGIC).put(VERSION).putInt(snapshot.getDentists().size()).putInt(0);
+
+            for (Dentist dentist : snapshot.getDentists()) {
+                byte[][] strings = encodeStrings(dentist.getDentistName(), dentist.getOwner(), dentist.getAddress(),
+                        dentist.getCity(), dentist.getMonday(), dentist.getTuesday(), dentist.getWednesday(),
+                        dentist.getThursday(), dentist.getFriday());
+                int size = DENTIST_BYTES;
+                for (byte[] string : strings) {
+                    size += 2 + string.length;
+                }
+                buffer = ensureRemaining(channel, buffer, size);
+                buffer.putShort((short) dentist.getId())
+                        .put((byte) dentist.getDentistNumber())
+                        .putDouble(dentist.getLatitude())
+                        .putDouble(dentist.getLongitude());
+                for (byte[] string : strings) {
+                    putString(buffer, string);
+                }
+            }
+
+            // Deltas can change the booking registry while it is written, so the bookings are counted as they are
+            // written and the count in the header is filled in at the end
+            int bookings = 0;
+            for (Booking booking : snapshot.getBookings().values()) {
+                byte[] time = booking.getTime().getBytes(StandardCharsets.UTF_8);
+                buffer = ensureRemaining(channel, buffer, BOOKING_BYTES + 2 + time.length);
+                buffer.putInt((int) booking.getUserid())
+                        .putInt((int) booking.getRequestid())
+                        .putShort((short) booking.getDentistid())
+                        .putLong(booking.getIssuance())
+                        .putInt((int) booking.getEpochMinute());
+                putString(buffer, time);
+                bookings++;
+            }
+            flush(channel, buffer);
+
+            ByteBuffer bookingCount = ByteBuffer.allocate(4).putInt(0, bookings);
+            while (bookingCount.hasRemaining()) {
+                channel.write(bookingCount, HEADER_BYTES - 4 + bookingCount.position());
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the registries in the file, or null when there is no file or it cannot be read
+     */
+    public RegistrySnapshot read() {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+                LOG.warn("{} is not a registry file of this version", path);
+                return null;
+            }
+            int dentistCount = buffer.getInt();
+            int bookingCount = buffer.getInt();
+
+            List<Dentist> dentists = new ArrayList<>(dentistCount);
+            for (int i = 0; i < dentistCount; i++) {
+                long id = buffer.getShort();
+                long dentistNumber = buffer.get();
+                double latitude = buffer.getDouble();
+                double longitude = buffer.getDouble();
+                dentists.add(new Dentist(id, getString(buffer), getString(buffer), dentistNumber, getString(buffer),
+                        getString(buffer), latitude, longitude, getString(buffer), getString(buffer),
+                        getString(buffer), getString(buffer), getString(buffer)));
+            }
+
+            ConcurrentHashMap<Long, Booking> bookings = new ConcurrentHashMap<>(bookingCount * 4 / 3 + 1);
+            for (int i = 0; i < bookingCount; i++) {
+                long userid = buffer.getInt();
+                long requestid = buffer.getInt();
+                long dentistid = buffer.getShort();
+                long issuance = buffer.getLong();
+                long epochMinute = buffer.getInt();
+                Booking booking = new Booking(userid, requestid, dentistid, issuance, getString(buffer), epochMinute);
+                bookings.put(Filter.bookingKey(userid, requestid), booking);
+            }
+
+            return RegistrySnapshot.empty().withDentists(dentists)
+                    .withBookings(bookings, new OccupancyIndex(bookings.values()));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            LOG.warn("Could not read the registries from {}", path, e);
+            return null;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Writes out the buffer when it has less room left than needed.
+     * @return the buffer to continue with, a larger one when the buffer could never hold the bytes needed
+     */
+    private static ByteBuffer ensureRemaining(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return buffer;
+        }
+        flush(channel, buffer);
+        return buffer.capacity() >= needed ? buffer : ByteBuffer.allocate(needed);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static byte[][] encodeStrings(String... strings) {
+        byte[][] encoded = new byte[strings.length][];
+        for (int i = 0; i < strings.length; i++) {
+            encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] string) {
+        buffer.putShort((short) string.length).put(string);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] string = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(string);
+        return new String(string, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,110 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RegistrySnapshot holds the dentist and booking registries that requests are decided against.
+ * Filter replaces the whole snapshot whenever a registry message arrives, so the versions of a snapshot and its
+ * dentist registry never change.
+ *
+ * The dentist registry is immutable, and comes with an OfficeIndex of the offices' locations. Booking registry
+ * deltas patch the booking map and the occupancy index in place, as copying them would make a delta as expensive as
+ * a full registry, and are published by replacing the snapshot with one that has a new booking version. A request
+ * that has read a snapshot may therefore see bookings of deltas that arrive while it is being decided. Deltas count
+ * an added booking in the occupancy index before releasing its reservation, so a taken chair is always counted.
+ */
+public final class RegistrySnapshot {
+    private final List<Dentist> dentists;
+    private final Map<Long, Dentist> dentistsById;
+    private final OfficeIndex officeIndex;
+    private final ConcurrentHashMap<Long, Booking> bookings;
+    private final OccupancyIndex occupancy;
+    private final long dentistVersion;
+    private final long bookingVersion;
+
+    /**
+     * @return a snapshot without any dental offices or bookings
+     */
+    public static RegistrySnapshot empty() {
+        List<Dentist> dentists = Collections.emptyList();
+        return new RegistrySnapshot(dentists, Collections.<Long, Dentist>emptyMap(), new OfficeIndex(dentists),
+                new ConcurrentHashMap<Long, Booking>(), new OccupancyIndex(), 0, 0);
+    }
+
+    private RegistrySnapshot(List<Dentist> dentists, Map<Long, Dentist> dentistsById, OfficeIndex officeIndex,
+                             ConcurrentHashMap<Long, Booking> bookings, OccupancyIndex occupancy,
+                             long dentistVersion, long bookingVersion) {
+        this.dentists = dentists;
+        this.dentistsById = dentistsById;
+        this.officeIndex = officeIndex;
+        this.bookings = bookings;
+        this.occupancy = occupancy;
+        this.dentistVersion = dentistVersion;
+        this.bookingVersion = bookingVersion;
+    }
+
+    /**
+     * @param newDentists the new dentist registry
+     * @return a snapshot with the new dentist registry and the same bookings, the office index is built here
+     */
+    public RegistrySnapshot withDentists(List<Dentist> newDentists) {
+        HashMap<Long, Dentist> newDentistsById = new HashMap<>();
+        for (Dentist dentist : newDentists) {
+            newDentistsById.put(dentist.getId(), dentist);
+        }
+        return new RegistrySnapshot(Collections.unmodifiableList(newDentists),
+                Collections.unmodifiableMap(newDentistsById), new OfficeIndex(newDentists), bookings, occupancy,
+                dentistVersion + 1, bookingVersion);
+    }
+
+    /**
+     * @param newBookings the new booking registry by booking key
+     * @param newOccupancy occupancy index of the new booking registry
+     * @return a snapshot with the new booking registry and the same dental offices
+     */
+    public RegistrySnapshot withBookings(ConcurrentHashMap<Long, Booking> newBookings, OccupancyIndex newOccupancy) {
+        return new RegistrySnapshot(dentists, dentistsById, officeIndex, newBookings, newOccupancy, dentistVersion,
+                bookingVersion + 1);
+    }
+
+    /**
+     * @return a snapshot with a new booking version, used after a delta has been applied to the booking registry
+     */
+    public RegistrySnapshot withChangedBookings() {
+        return withBookings(bookings, occupancy);
+    }
+
+    public List<Dentist> getDentists() {
+        return dentists;
+    }
+
+    public Map<Long, Dentist> getDentistsById() {
+        return dentistsById;
+    }
+
+    public OfficeIndex getOfficeIndex() {
+        return officeIndex;
+    }
+
+    /**
+     * The booking map may only be changed by the thread applying registry messages.
+     * @return bookings by booking key
+     */
+    public ConcurrentHashMap<Long, Booking> getBookings() {
+        return bookings;
+    }
+
+    public OccupancyIndex getOccupancy() {
+        return occupancy;
+    }
+
+    public long getDentistVersion() {
+        return dentistVersion;
+    }
+
+    public long getBookingVersion() {
+        return bookingVersion;
+    }
+}
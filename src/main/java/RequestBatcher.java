@@ -0,0 +1,93 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * RequestBatcher collects requests into batches and hands each batch to a handler on its own thread.
+ * A batch is closed when the window has passed since its first request arrived, or earlier when it is full.
+ * @param <T> type of the requests
+ */
+public class RequestBatcher<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(RequestBatcher.class);
+
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Consumer<List<T>> handler;
+    private final LinkedBlockingQueue<T> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+
+    /**
+     * @param windowMillis longest time a request waits for more requests to join its batch
+     * @param maxBatchSize largest number of requests in one batch
+     * @param handler called with every batch, always on the same thread
+     * @param name name of the batching thread
+     */
+    public RequestBatcher(long windowMillis, int maxBatchSize, Consumer<List<T>> handler, String name) {
+        if (windowMillis < 1 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch window and size have to be at least one: " +
+                    windowMillis + " ms, " + maxBatchSize + " requests");
+        }
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBatchSize = maxBatchSize;
+        this.handler = handler;
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * @param request request to add to the current batch
+     */
+    public void add(T request) {
+        queue.add(request);
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<T> batch = new ArrayList<>(maxBatchSize);
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + windowNanos;
+
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    T request = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (request == null) {
+                        break;
+                    }
+                    batch.add(request);
+                }
+                try {
+                    handler.accept(batch);
+                } catch (RuntimeException e) {
+                    LOG.error("Batch of {} requests failed", batch.size(), e); // Keeps batching the following requests
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of requests waiting to be put in a batch
+     */
+    public int getQueuedRequests() {
+        return queue.size();
+    }
+
+    /**
+     * Stops the batching thread, requests that have not been handed to the handler yet are dropped.
+     */
+    public void shutdown() {
+        worker.interrupt();
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongPredicate;
+
+/**
+ * ReservationLedger remembers the bookings that have been accepted but are not in the booking registry yet.
+ * The Booking component only sends the accepted booking back with its next registry message, so until then the ledger
+ * keeps its chair taken and a burst of requests for the same time cannot all be accepted.
+ *
+ * A reservation is released when the booking shows up in a registry message, or when it has not shown up within the
+ * time to live, e.g. because the Booking component did not save it.
+ * Reservations can be read and made from any thread, but a request has to be decided and reserved on the thread that
+ * handles its dental office, otherwise two threads could both see the last chair free.
+ */
+public class ReservationLedger {
+    private final long ttlMillis;
+
+    // booking key -> reservation, see Filter.bookingKey
+    private final ConcurrentHashMap<Long, Reservation> reservations = new ConcurrentHashMap<>();
+    private final OccupancyIndex reservedChairs = new OccupancyIndex();
+
+    /**
+     * @param ttlMillis how long a reservation is kept without showing up in the booking registry
+     */
+    public ReservationLedger(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Takes a chair for an accepted booking, replacing an earlier reservation of the same booking.
+     * @param bookingKey key of the booking
+     * @param dentistid id of the dental office
+     * @param epochMinute booking time in epoch minutes, see BookingTime
+     * @param now current time in milliseconds
+     */
+    public void reserve(long bookingKey, long dentistid, long epochMinute, long now) {
+        Reservation replaced = reservations.put(bookingKey, new Reservation(dentistid, epochMinute, now));
+        if (replaced != null) {
+            reservedChairs.remove(replaced.dentistid, replaced.epochMinute);
+        }
+        reservedChairs.add(dentistid, epochMinute);
+    }
+
+    /**
+     * Returns the number of chairs reserved at a dental office at a given time.
+     * @param dentistid id of the dental office
+     * @param epochMinute booking time in epoch minutes, see BookingTime
+     * @return number of reservations, 0 if there are none
+     */
+    public int countReservations(long dentistid, long epochMinute) {
+        return reservedChairs.countBookings(dentistid, epochMinute);
+    }
+
+    /**
+     * @param bookingKey key of the booking
+     * @param dentistid id of the dental office
+     * @param epochMinute booking time in epoch minutes, see BookingTime
+     * @return true when the booking holds a reservation at that dental office and time
+     */
+    public boolean isReserved(long bookingKey, long dentistid, long epochMinute) {
+        Reservation reservation = reservations.get(bookingKey);
+        return reservation != null && reservation.dentistid == dentistid && reservation.epochMinute == epochMinute;
+    }
+
+    /**
+     * Releases the reservation of a booking, called when a registry delta adds or removes the booking.
+     * @param bookingKey key of the booking
+     */
+    public void release(long bookingKey) {
+        Reservation released = reservations.remove(bookingKey);
+        if (released != null) {
+            reservedChairs.remove(released.dentistid, released.epochMinute);
+        }
+    }
+
+    /**
+     * Releases the reservations of bookings that are in a new booking registry, and the ones that have expired.
+     * Call it after the new registry is used for decisions, so a booking is always counted by at least one of them.
+     * @param bookingRegistry bookings by booking key
+     * @param now current time in milliseconds
+     */
+    public void reconcile(Map<Long, Booking> bookingRegistry, long now) {
+        Iterator<Map.Entry<Long, Reservation>> entries = reservations.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Long, Reservation> entry = entries.next();
+            Reservation reservation = entry.getValue();
+            if ((bookingRegistry.containsKey(entry.getKey()) || isExpired(reservation, now))
+                    && reservations.remove(entry.getKey(), reservation)) {
+                reservedChairs.remove(reservation.dentistid, reservation.epochMinute);
+            }
+        }
+    }
+
+    /**
+     * Releases the reservations that have expired.
+     * @param now current time in milliseconds
+     */
+    public void prune(long now) {
+        reconcile(Collections.<Long, Booking>emptyMap(), now);
+    }
+
+    /**
+     * Releases the reservations of some dental offices, e.g. the ones another instance of a Cluster handles now.
+     * @param dentists selects the dental offices by id
+     * @param released receives every released reservation
+     */
+    public void releaseIf(LongPredicate dentists, ReservationConsumer released) {
+        Iterator<Map.Entry<Long, Reservation>> entries = reservations.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Long, Reservation> entry = entries.next();
+            Reservation reservation = entry.getValue();
+            if (dentists.test(reservation.dentistid) && reservations.remove(entry.getKey(), reservation)) {
+                reservedChairs.remove(reservation.dentistid, reservation.epochMinute);
+                released.accept(entry.getKey(), reservation.dentistid, reservation.epochMinute,
+                        reservation.reservedAt);
+            }
+        }
+    }
+
+    /**
+     * Passes every reservation to the consumer, e.g. to write them to the DecisionLog. Reservations made or released
+     * while iterating may or may not be passed.
+     * @param consumer receives the reservations
+     */
+    public void forEach(ReservationConsumer consumer) {
+        reservations.forEach((bookingKey, reservation) -> consumer.accept(bookingKey, reservation.dentistid,
+                reservation.epochMinute, reservation.reservedAt));
+    }
+
+    /**
+     * @return the number of reservations in the ledger
+     */
+    public int size() {
+        return reservations.size();
+    }
+
+    private boolean isExpired(Reservation reservation, long now) {
+        return now - reservation.reservedAt > ttlMillis;
+    }
+
+    /**
+     * Receives reservations, reserve has the same parameters so a ledger can be refilled with reservations read back.
+     */
+    public interface ReservationConsumer {
+        void accept(long bookingKey, long dentistid, long epochMinute, long reservedAt);
+    }
+
+    private static final class Reservation {
+        private final long dentistid;
+        private final long epochMinute;
+        private final long reservedAt;
+
+        private Reservation(long dentistid, long epochMinute, long reservedAt) {
+            this.dentistid = dentistid;
+            this.epochMinute = epochMinute;
+            this.reservedAt = reservedAt;
+        }
+    }
+}
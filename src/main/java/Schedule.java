@@ -1,16 +1,17 @@
-import java.time.DayOfWeek;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.HashMap;
-import static java.time.temporal.ChronoUnit.HOURS;
 
+/**
+ * Schedule of a dental office for one day. The free chairs are kept in a SlotGrid, TimeSlots are only created
+ * when the schedule is listed.
+ */
 public class Schedule {
-    private final int SLOT_DURATION = 30; // Length of appointment time slots
+    private static final int SLOT_DURATION = 30; // Length of appointment time slots
+    private static final DateTimeFormatter OPENING_HOURS_FORMAT = DateTimeFormatter.ofPattern("H:mm");
 
-    private ArrayList<TimeSlot> timeSlots;
+    private SlotGrid slotGrid;
     private Dentist dentist; // Dental office
     private LocalDate selectedDate;
 
@@ -20,7 +21,6 @@ public class Schedule {
      * @param selectedDate date for the schedule
      */
     public Schedule(Dentist dentist, LocalDate selectedDate) {
-        timeSlots = new ArrayList<>();
         setDentist(dentist);
         setSelectedDate(selectedDate);
         generateTimeSlots();
@@ -42,7 +42,23 @@ public class Schedule {
         this.selectedDate = selectedDate;
     }
 
+    public SlotGrid getSlotGrid() {
+        return slotGrid;
+    }
+
+    /**
+     * Lists every chair in every time slot, i.e. a time slot with three dentists is listed three times.
+     * @return all time slots of the day
+     */
     public ArrayList<TimeSlot> getTimeSlots() {
+        ArrayList<TimeSlot> timeSlots = new ArrayList<>();
+
+        for (int slot = 0; slot < slotGrid.getSlotCount(); slot++) {
+            int freeChairs = slotGrid.getFreeChairs(slot);
+            for (int chair = 0; chair < dentist.getDentistNumber(); chair++) {
+                timeSlots.add(TimeSlot.of(slotGrid.getStartMinute(slot), SLOT_DURATION, chair < freeChairs));
+            }
+        }
         return timeSlots;
     }
 
@@ -53,9 +69,9 @@ public class Schedule {
     private ArrayList<TimeSlot> getAvailableTimeSlots() {
         ArrayList<TimeSlot> availableSlots = new ArrayList<>();
 
-        for (TimeSlot timeSlot : timeSlots) {
-            if (timeSlot.isAvailable()) {
-                availableSlots.add(timeSlot);
+        for (int slot = 0; slot < slotGrid.getSlotCount(); slot++) {
+            for (int chair = 0; chair < slotGrid.getFreeChairs(slot); chair++) {
+                availableSlots.add(TimeSlot.of(slotGrid.getStartMinute(slot), SLOT_DURATION, true));
             }
         }
         return availableSlots;
@@ -63,50 +79,39 @@ public class Schedule {
 
     /**
      * Creates time slots and fills the schedule with them based on the opening hours and day of the week.
+     * Days without opening hours, e.g. weekends, get a schedule without time slots.
      */
     private void generateTimeSlots() {
-        HashMap<String, String> weekOpeningHours = dentist.getOpeningHours();
-
         // Get the day of the week from the selected date
-        DayOfWeek selectedDayOfWeek = selectedDate.getDayOfWeek();
-        String weekDay = selectedDayOfWeek.name();
+        String openingHours = dentist.getOpeningHours(selectedDate.getDayOfWeek());
 
-        // Splits opening hour string so we get the start and end time
-        ArrayList<LocalTime> startClosingHours = splitOpeningHours(weekOpeningHours.get(weekDay.toLowerCase()));
-
-        // Where to start the loop, also keeps track of the start of the next time slot
-        LocalTime slotStartTime = startClosingHours.get(0);
-        LocalTime closingHour = startClosingHours.get(1);
-
-        // Creates time slots until slotStartTime is the same as closingHour
-        while (slotStartTime != closingHour) {
-            LocalTime endTime = slotStartTime.plusMinutes(SLOT_DURATION);
-            // Create time slots depending on the number of dentists at a dental office
-            for (int i = 0; i < dentist.getDentistNumber(); i++) {
-                timeSlots.add(new TimeSlot(slotStartTime, endTime, true));
-            }
-            slotStartTime = endTime;
+        if (openingHours == null) {
+            slotGrid = new SlotGrid(0, 0, SLOT_DURATION, 0);
+            return;
         }
 
+        // Splits opening hour string so we get the start and end time
+        int[] startClosingHours = splitOpeningHours(openingHours);
+
+        // Create time slots depending on the number of dentists at a dental office
+        slotGrid = new SlotGrid(startClosingHours[0], startClosingHours[1], SLOT_DURATION,
+                (int) dentist.getDentistNumber());
+
         setBreaks();
     }
 
     /**
-     * Splits the opening hours string into two separate LocalTimes.
+     * Splits the opening hours string into the opening and closing hour.
      * @param openingHoursString opening hours as a string
-     * @return Opening hour and closing hour as an ArrayList
+     * @return Opening hour and closing hour in minutes since midnight
      */
-    private ArrayList<LocalTime> splitOpeningHours(String openingHoursString) {
+    private int[] splitOpeningHours(String openingHoursString) {
         String[] openingHours = openingHoursString.split("-");
 
-        LocalTime startHour = LocalTime.parse(openingHours[0], DateTimeFormatter.ofPattern("H:mm"));
-        LocalTime closingHour = LocalTime.parse(openingHours[1], DateTimeFormatter.ofPattern("H:mm"));
+        LocalTime startHour = LocalTime.parse(openingHours[0], OPENING_HOURS_FORMAT);
+        LocalTime closingHour = LocalTime.parse(openingHours[1], OPENING_HOURS_FORMAT);
 
-        ArrayList<LocalTime> openingHoursList = new ArrayList<>();
-        openingHoursList.add(startHour);
-        openingHoursList.add(closingHour);
-
-        return openingHoursList;
+        return new int[]{startHour.toSecondOfDay() / 60, closingHour.toSecondOfDay() / 60};
     }
 
     /**
@@ -121,50 +126,40 @@ public class Schedule {
      * TODO: Change how breaks are set, possibly in Booking so the breaks are saved.
      */
     private void setBreaks() {
-        LocalTime start = timeSlots.get(0).startTime;
-        LocalTime end = timeSlots.get(timeSlots.size()-1).endTime;
-
-        // Difference in hours between start and end
-        long hoursOpen = start.until(end, HOURS);
-        long lunchHour = hoursOpen / 2;
-        LocalTime lunchStartTime = start.plusHours(lunchHour);
-
-        // Setting breaks
-        for (int i = 0; i < timeSlots.size()-1; i++) {
-            // Set the first slot of the day as fika break
-            if (timeSlots.get(i).startTime == start) {
-                timeSlots.get(i).setAvailable(false);
-            }
-            // Setting the hour in the middle of the opening hours as lunch break
-            if (timeSlots.get(i).startTime == lunchStartTime) {
-                timeSlots.get(i).setAvailable(false);
-            }
-            if (timeSlots.get(i).endTime == lunchStartTime.plusHours(1)) {
-                timeSlots.get(i).setAvailable(false);
+        if (slotGrid.getSlotCount() == 0) {
+            return;
+        }
+        int start = slotGrid.getOpeningMinute();
+        int end = slotGrid.getStartMinute(slotGrid.getSlotCount());
+
+        // Difference in whole hours between start and end
+        int hoursOpen = (end - start) / 60;
+        int lunchHour = hoursOpen / 2;
+        int lunchStartTime = start + lunchHour * 60;
+
+        // Set the first slot of the day as fika break
+        slotGrid.close(0);
+
+        // Setting the hour in the middle of the opening hours as lunch break
+        for (int minute = lunchStartTime; minute < lunchStartTime + 60; minute += SLOT_DURATION) {
+            int slot = slotGrid.slotAt(minute);
+            if (slot >= 0) {
+                slotGrid.close(slot);
             }
         }
     }
 
     /**
-     * Sets booked time slots to unavailable, i.e. changing available to false.
-     * @param bookings unavailable time slots
+     * Sets booked time slots to unavailable, i.e. taking one free chair per booking.
+     * The bookings are looked up per time slot in the occupancy index, so the booking registry is not scanned.
+     * @param occupancy occupancy index of the booking registry
      */
-    public void setUnavailableTimeSlots(ArrayList<Booking> bookings) {
-        for (Booking booking : bookings) {
-            boolean handled = false; // Helps with multiple dentists
-            // Find bookings for the dental office
-            if (booking.getDentistid() == dentist.getId()) {
-                LocalDateTime dateTime = LocalDateTime.parse(booking.getTime(), DateTimeFormatter.ofPattern("yyyy-MM-dd H:mm"));
-                // Match booking date with schedule date
-                if (selectedDate.equals(dateTime.toLocalDate())) {
-                    // Loop through available slots for that date & match time slots
-                    for (TimeSlot slot : timeSlots) {
-                        if (slot.startTime.equals(dateTime.toLocalTime()) && !handled && slot.isAvailable()) {
-                            slot.setAvailable(false);
-                            handled = true; // Sets to true because this booking has been dealt with
-                        }
-                    }
-                }
+    public void setUnavailableTimeSlots(OccupancyIndex occupancy) {
+        for (int slot = 0; slot < slotGrid.getSlotCount(); slot++) {
+            long slotTime = BookingTime.of(selectedDate, slotGrid.getStartMinute(slot));
+            int bookings = occupancy.countBookings(dentist.getId(), slotTime);
+            if (bookings > 0) {
+                slotGrid.book(slot, bookings);
             }
         }
     }
@@ -0,0 +1,54 @@
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ScheduleTask creates the schedules of a range of dental offices and days in a fork/join pool.
+ * Schedule i is the schedule of dental office i % dentists.size() on day i / dentists.size(), so the result is
+ * ordered by day and then in the order of the dentist registry. Ranges larger than the threshold are split in two.
+ */
+public class ScheduleTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private static final int THRESHOLD = 32; // Schedules created by one task without splitting it further
+
+    private final List<Dentist> dentists;
+    private final LocalDate firstDate;
+    private final OccupancyIndex occupancy;
+    private final Schedule[] schedules;
+    private final int from;
+    private final int to;
+
+    /**
+     * @param dentists dental offices
+     * @param firstDate date of the first day
+     * @param occupancy occupancy index of the booking registry
+     * @param schedules receives the schedules, its length decides the number of days
+     * @param from index of the first schedule, inclusive
+     * @param to index of the last schedule, exclusive
+     */
+    public ScheduleTask(List<Dentist> dentists, LocalDate firstDate, OccupancyIndex occupancy,
+                        Schedule[] schedules, int from, int to) {
+        this.dentists = dentists;
+        this.firstDate = firstDate;
+        this.occupancy = occupancy;
+        this.schedules = schedules;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= THRESHOLD) {
+            for (int i = from; i < to; i++) {
+                Schedule schedule = new Schedule(dentists.get(i % dentists.size()),
+                        firstDate.plusDays(i / dentists.size()));
+                schedule.setUnavailableTimeSlots(occupancy);
+                schedules[i] = schedule;
+            }
+        } else {
+            int middle = (from + to) >>> 1;
+            invokeAll(new ScheduleTask(dentists, firstDate, occupancy, schedules, from, middle),
+                    new ScheduleTask(dentists, firstDate, occupancy, schedules, middle, to));
+        }
+    }
+}
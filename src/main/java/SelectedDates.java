@@ -0,0 +1,64 @@
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+
+/**
+ * The dates selected in an availability request, from the first to the last date inclusive, and the encoding the
+ * free slots are requested in.
+ */
+public final class SelectedDates {
+    private final LocalDate firstDate;
+    private final LocalDate lastDate;
+    private final FreeSlotsEncoding encoding;
+
+    public SelectedDates(LocalDate firstDate, LocalDate lastDate) {
+        this(firstDate, lastDate, FreeSlotsEncoding.JSON);
+    }
+
+    public SelectedDates(LocalDate firstDate, LocalDate lastDate, FreeSlotsEncoding encoding) {
+        this.firstDate = firstDate;
+        this.lastDate = lastDate;
+        this.encoding = encoding;
+    }
+
+    public LocalDate getFirstDate() {
+        return firstDate;
+    }
+
+    public LocalDate getLastDate() {
+        return lastDate;
+    }
+
+    public FreeSlotsEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @return the number of selected days
+     */
+    public int getDays() {
+        return (int) firstDate.until(lastDate, ChronoUnit.DAYS) + 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SelectedDates)) {
+            return false;
+        }
+        SelectedDates that = (SelectedDates) o;
+        return firstDate.equals(that.firstDate) && lastDate.equals(that.lastDate) && encoding == that.encoding;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(firstDate, lastDate, encoding);
+    }
+
+    @Override
+    public String toString() {
+        return firstDate.equals(lastDate) ? firstDate.toString() : firstDate + " - " + lastDate;
+    }
+}
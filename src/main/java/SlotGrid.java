@@ -0,0 +1,115 @@
+import java.util.Arrays;
+
+/**
+ * SlotGrid is the compact form of a dental office's schedule for one day.
+ * Instead of one TimeSlot object per chair and time slot, it keeps the number of free chairs for every time slot
+ * of the day in a small array. Schedule and TimeSlot are views over it.
+ */
+public class SlotGrid {
+    private final int openingMinute; // Minutes since midnight when the first time slot starts
+    private final int slotDuration;
+    private final byte[] freeChairs; // There are at most 99 dentists at an office, see Validation
+
+    /**
+     * Creates a grid where all chairs are free in every time slot between opening and closing.
+     * @param openingMinute opening hour in minutes since midnight
+     * @param closingMinute closing hour in minutes since midnight
+     * @param slotDuration length of a time slot in minutes
+     * @param chairs number of dentists working at the office
+     */
+    public SlotGrid(int openingMinute, int closingMinute, int slotDuration, int chairs) {
+        this.openingMinute = openingMinute;
+        this.slotDuration = slotDuration;
+        this.freeChairs = new byte[Math.max(0, (closingMinute - openingMinute) / slotDuration)];
+        Arrays.fill(freeChairs, (byte) chairs);
+    }
+
+    /**
+     * Creates a grid from free chair counts, e.g. when decoding a schedule.
+     * @param openingMinute opening hour in minutes since midnight
+     * @param slotDuration length of a time slot in minutes
+     * @param freeChairs number of free chairs in each time slot
+     */
+    public SlotGrid(int openingMinute, int slotDuration, byte[] freeChairs) {
+        this.openingMinute = openingMinute;
+        this.slotDuration = slotDuration;
+        this.freeChairs = freeChairs.clone();
+    }
+
+    public int getOpeningMinute() {
+        return openingMinute;
+    }
+
+    public int getSlotDuration() {
+        return slotDuration;
+    }
+
+    public int getSlotCount() {
+        return freeChairs.length;
+    }
+
+    /**
+     * @param slot index of the time slot
+     * @return start of the time slot in minutes since midnight
+     */
+    public int getStartMinute(int slot) {
+        return openingMinute + slot * slotDuration;
+    }
+
+    /**
+     * @param minuteOfDay minutes since midnight
+     * @return index of the time slot starting at that minute, or -1 if no time slot starts then
+     */
+    public int slotAt(int minuteOfDay) {
+        int offset = minuteOfDay - openingMinute;
+        if (offset < 0 || offset % slotDuration != 0 || offset / slotDuration >= freeChairs.length) {
+            return -1;
+        }
+        return offset / slotDuration;
+    }
+
+    public int getFreeChairs(int slot) {
+        return freeChairs[slot];
+    }
+
+    /**
+     * Makes every chair unavailable in a time slot, e.g. for breaks.
+     * @param slot index of the time slot
+     */
+    public void close(int slot) {
+        freeChairs[slot] = 0;
+    }
+
+    /**
+     * Takes up to the given number of chairs in a time slot. Bookings that do not fit are ignored.
+     * @param slot index of the time slot
+     * @param chairs number of chairs to take
+     */
+    public void book(int slot, int chairs) {
+        freeChairs[slot] = (byte) Math.max(0, freeChairs[slot] - chairs);
+    }
+
+    /**
+     * @return bit i is set if time slot i has at least one free chair
+     */
+    public long getFreeSlotMask() {
+        long mask = 0;
+        for (int slot = 0; slot < freeChairs.length; slot++) {
+            if (freeChairs[slot] > 0) {
+                mask |= 1L << slot;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @return total number of free chairs over all time slots
+     */
+    public int countFreeChairs() {
+        int count = 0;
+        for (byte free : freeChairs) {
+            count += free;
+        }
+        return count;
+    }
+}
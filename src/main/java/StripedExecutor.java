@@ -0,0 +1,70 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StripedExecutor runs tasks on a fixed number of single-threaded workers, choosing the worker by a stripe key.
+ * Tasks with the same key, e.g. booking requests for the same dental office, run one at a time in the order they
+ * were submitted, while tasks with different keys can run in parallel.
+ */
+public class StripedExecutor {
+    private final ThreadPoolExecutor[] stripes;
+
+    /**
+     * @param workers number of worker threads
+     * @param name prefix of the worker thread names
+     */
+    public StripedExecutor(int workers, String name) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Number of workers has to be at least one: " + workers);
+        }
+        stripes = new ThreadPoolExecutor[workers];
+        for (int i = 0; i < workers; i++) {
+            String threadName = name + "-" + i;
+            stripes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), task -> {
+                Thread thread = new Thread(task, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * @param stripeKey tasks with the same key run on the same worker
+     * @param task task to run
+     */
+    public void execute(long stripeKey, Runnable task) {
+        stripes[(int) Math.floorMod(stripeKey, (long) stripes.length)].execute(task);
+    }
+
+    public int getWorkers() {
+        return stripes.length;
+    }
+
+    /**
+     * @return the number of tasks waiting for a worker, over all workers
+     */
+    public int getQueuedTasks() {
+        int queued = 0;
+        for (ThreadPoolExecutor stripe : stripes) {
+            queued += stripe.getQueue().size();
+        }
+        return queued;
+    }
+
+    /**
+     * Stops accepting tasks and waits for the submitted ones to finish.
+     * @param timeout longest time to wait per worker
+     * @param unit unit of the timeout
+     * @throws InterruptedException thrown when interrupted while waiting
+     */
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        for (ExecutorService stripe : stripes) {
+            stripe.shutdown();
+        }
+        for (ExecutorService stripe : stripes) {
+            stripe.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * StripedLruCache splits a bounded cache into stripes, each an LruCache of its own, choosing the stripe by the key.
+ * Threads using keys of different stripes never wait for each other, while each stripe still evicts its least
+ * recently used entry when it is full. The counters of the stripes are added up when they are read.
+ * @param <K> type of the keys, with equals and hashCode
+ * @param <V> type of the values
+ */
+public class StripedLruCache<K, V> {
+    private final LruCache<K, V>[] stripes;
+
+    /**
+     * @param maxEntries the maximum number of entries kept in the cache, split evenly between the stripes
+     * @param stripeCount number of stripes
+     */
+    @SuppressWarnings("unchecked")
+    public StripedLruCache(int maxEntries, int stripeCount) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("Number of stripes has to be at least one: " + stripeCount);
+        }
+        stripes = new LruCache[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new LruCache<>(Math.max(1, maxEntries / stripeCount));
+        }
+    }
+
+    /**
+     * @param key key of the entry
+     * @return the cached value, or null if there is none
+     */
+    public V get(K key) {
+        return stripe(key).get(key);
+    }
+
+    public void put(K key, V value) {
+        stripe(key).put(key, value);
+    }
+
+    public void clear() {
+        for (LruCache<K, V> stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (LruCache<K, V> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    public long getHits() {
+        long hits = 0;
+        for (LruCache<K, V> stripe : stripes) {
+            hits += stripe.getHits();
+        }
+        return hits;
+    }
+
+    public long getMisses() {
+        long misses = 0;
+        for (LruCache<K, V> stripe : stripes) {
+            misses += stripe.getMisses();
+        }
+        return misses;
+    }
+
+    /**
+     * @return the share of gets answered from the cache, 0 before any get
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long requests = hits + getMisses();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    private LruCache<K, V> stripe(K key) {
+        int hash = key.hashCode();
+        return stripes[Math.floorMod(hash ^ (hash >>> 16), stripes.length)];
+    }
+}
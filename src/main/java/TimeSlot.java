@@ -1,6 +1,18 @@
 import java.time.LocalTime;
 
+/**
+ * A time slot for one chair. TimeSlots are views created from a SlotGrid when a schedule is listed.
+ */
 public class TimeSlot {
+    // Times of day are shared between all TimeSlots instead of being created for every slot
+    private static final LocalTime[] MINUTES_OF_DAY = new LocalTime[BookingTime.MINUTES_PER_DAY];
+
+    static {
+        for (int minute = 0; minute < MINUTES_OF_DAY.length; minute++) {
+            MINUTES_OF_DAY[minute] = LocalTime.of(minute / 60, minute % 60);
+        }
+    }
+
     LocalTime startTime;
     LocalTime endTime;
     boolean available;
@@ -11,6 +23,17 @@ public class TimeSlot {
         setAvailable(available);
     }
 
+    /**
+     * @param startMinute start of the time slot in minutes since midnight
+     * @param duration length of the time slot in minutes
+     * @param available whether the time slot is available
+     * @return a time slot
+     */
+    public static TimeSlot of(int startMinute, int duration, boolean available) {
+        int endMinute = (startMinute + duration) % BookingTime.MINUTES_PER_DAY;
+        return new TimeSlot(MINUTES_OF_DAY[startMinute], MINUTES_OF_DAY[endMinute], available);
+    }
+
     public LocalTime getStartTime() {
         return startTime;
     }
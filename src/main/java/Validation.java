@@ -0,0 +1,124 @@
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Pattern;
+
+/**
+ * Validation holds the rules used by the setters of Booking, ReceivedBooking and Dentist.
+ * Ids and numbers are checked with range checks instead of converting them to Strings, text is checked character by
+ * character and the remaining patterns and formatters are compiled once.
+ */
+public final class Validation {
+    public static final DateTimeFormatter BOOKING_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd H:mm");
+
+    /*
+     * The coordinate regexes were taken from this StackOverFlow forum: https://stackoverflow.com/questions/3518504/regular-expression-for-matching-latitude-longitude-coordinates
+     * on December 15th, 2020
+     */
+    private static final Pattern LATITUDE = Pattern.compile("^(\\+|-)?(?:90(?:(?:\\.0{1,6})?)|(?:[0-9]|[1-8][0-9])(?:(?:\\.[0-9]{1,6})?))$");
+    private static final Pattern LONGITUDE = Pattern.compile("^(\\+|-)?(?:180(?:(?:\\.0{1,6})?)|(?:[0-9]|[1-9][0-9]|1[0-7][0-9])(?:(?:\\.[0-9]{1,6})?))$");
+
+    private static final String ILLEGAL_NAME_CHARACTERS = "!?(){}<>#;/%&$£@=+*";
+    private static final String ILLEGAL_ADDRESS_CHARACTERS = "!?(){}<>#;/%&$@=+*";
+
+    private static final long MIN_ISSUANCE = 1000000000000L; // Smallest thirteen digit number
+    private static final long MAX_ISSUANCE = 9999999999999L;
+
+    private Validation() {
+    }
+
+    // User ids are between one and six digits long
+    public static boolean isValidUserid(long userid) {
+        return userid >= 0 && userid <= 999999;
+    }
+
+    // Request ids are between one and five digits long, this allows there to be up to 99999 requests
+    public static boolean isValidRequestid(long requestid) {
+        return requestid >= 0 && requestid <= 99999;
+    }
+
+    // Dentist ids are between one and four digits long, this allows there to be up to 9999 dental offices
+    public static boolean isValidDentistid(long dentistid) {
+        return dentistid >= 0 && dentistid <= 9999;
+    }
+
+    // Issuance is a timestamp in milliseconds which has to be thirteen digits long
+    public static boolean isValidIssuance(long issuance) {
+        return issuance >= MIN_ISSUANCE && issuance <= MAX_ISSUANCE;
+    }
+
+    // The number of dentists at an office is between one and two digits long
+    public static boolean isValidDentistNumber(long dentistNumber) {
+        return dentistNumber >= 0 && dentistNumber <= 99;
+    }
+
+    public static boolean isValidTime(String time) {
+        try {
+            LocalDateTime.parse(time, BOOKING_TIME_FORMAT);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+        return true;
+    }
+
+    // Used for dentist names and owners
+    public static boolean isValidName(String name) {
+        return isNonEmptyWithout(name, ILLEGAL_NAME_CHARACTERS);
+    }
+
+    // Used for addresses and cities
+    public static boolean isValidAddress(String address) {
+        return isNonEmptyWithout(address, ILLEGAL_ADDRESS_CHARACTERS);
+    }
+
+    public static boolean isValidLatitude(double latitude) {
+        if (!(latitude >= -90 && latitude <= 90)) {
+            return false;
+        }
+        return LATITUDE.matcher(String.valueOf(latitude)).matches();
+    }
+
+    public static boolean isValidLongitude(double longitude) {
+        if (!(longitude >= -180 && longitude <= 180)) {
+            return false;
+        }
+        return LONGITUDE.matcher(String.valueOf(longitude)).matches();
+    }
+
+    /**
+     * Opening hours are rejected when they consist of a digit, a colon and ten to eleven dashes, e.g. 7:----------
+     * @param openingHours opening hours of one day
+     * @return false if the opening hours have that format
+     */
+    public static boolean isValidOpeningHours(String openingHours) {
+        int length = openingHours.length();
+        if (length < 12 || length > 13) {
+            return true;
+        }
+        if (!isDigit(openingHours.charAt(0)) || openingHours.charAt(1) != ':') {
+            return true;
+        }
+        for (int i = 2; i < length; i++) {
+            if (openingHours.charAt(i) != '-') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNonEmptyWithout(String text, String illegalCharacters) {
+        if (text.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (illegalCharacters.indexOf(text.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,84 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConsistentHashRingTest {
+    private static final int KEYS = 10000; // Every dentist id
+
+    @Test
+    public void emptyRingHasNoOwners() {
+        assertNull(new ConsistentHashRing(Collections.<String>emptyList()).owner(1));
+    }
+
+    @Test
+    public void singleMemberOwnsEverything() {
+        ConsistentHashRing ring = new ConsistentHashRing(Collections.singletonList("a"));
+
+        for (long key = 0; key < KEYS; key++) {
+            assertEquals("a", ring.owner(key));
+        }
+    }
+
+    @Test
+    public void everyMemberBuildsTheSameRing() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b", "c"));
+        ConsistentHashRing reordered = new ConsistentHashRing(Arrays.asList("c", "a", "b"));
+
+        for (long key = 0; key < KEYS; key++) {
+            assertEquals(ring.owner(key), reordered.owner(key));
+        }
+    }
+
+    @Test
+    public void keysAreSplitBetweenTheMembers() {
+        Map<String, Integer> owned = count(new ConsistentHashRing(Arrays.asList("a", "b", "c")));
+
+        assertEquals(3, owned.size());
+        for (Map.Entry<String, Integer> member : owned.entrySet()) {
+            // A third each, give or take the unevenness of 128 points per member
+            assertTrue(member.toString(), member.getValue() > KEYS / 5 && member.getValue() < KEYS / 2);
+        }
+    }
+
+    @Test
+    public void joiningMemberOnlyTakesKeys() {
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("a", "b", "c"));
+        ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("a", "b", "c", "d"));
+
+        int moved = 0;
+        for (long key = 0; key < KEYS; key++) {
+            if (!before.owner(key).equals(after.owner(key))) {
+                assertEquals("d", after.owner(key)); // No key moves between the members that stay
+                moved++;
+            }
+        }
+        assertTrue("moved " + moved, moved > KEYS / 8 && moved < KEYS / 2);
+    }
+
+    @Test
+    public void leavingMemberOnlyGivesAwayItsKeys() {
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("a", "b", "c"));
+        ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("a", "c"));
+
+        for (long key = 0; key < KEYS; key++) {
+            if (!before.owner(key).equals("b")) {
+                assertEquals(before.owner(key), after.owner(key));
+            }
+        }
+    }
+
+    private static Map<String, Integer> count(ConsistentHashRing ring) {
+        Map<String, Integer> owned = new HashMap<>();
+        for (long key = 0; key < KEYS; key++) {
+            owned.merge(ring.owner(key), 1, Integer::sum);
+        }
+        return owned;
+    }
+}
@@ -0,0 +1,151 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DecisionLogTest {
+    private static final long SEGMENT_BYTES = 1024 * 1024;
+    private static final long RETENTION_MILLIS = 60 * 1000;
+    private static final long NOW = 1609750000000L;
+    private static final String TIME = "2021-01-04 10:00";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysAcceptedDecisions() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        DecisionLog log = new DecisionLog(directory, SEGMENT_BYTES, RETENTION_MILLIS);
+        accept(log, 1, 10, 7, NOW);
+        reject(log, 2, 20, 7, NOW);
+        accept(log, 3, 30, 8, NOW + 1);
+        log.close();
+
+        Map<Long, String> replayed = replay(new DecisionLog(directory, SEGMENT_BYTES, RETENTION_MILLIS), 0);
+
+        Map<Long, String> expected = new TreeMap<>();
+        expected.put(Filter.bookingKey(1, 10), reservation(7, NOW));
+        expected.put(Filter.bookingKey(3, 30), reservation(8, NOW + 1));
+        assertEquals(expected, replayed);
+    }
+
+    @Test
+    public void skipsDecisionsBeforeSince() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        DecisionLog log = new DecisionLog(directory, SEGMENT_BYTES, RETENTION_MILLIS);
+        accept(log, 1, 10, 7, NOW - RETENTION_MILLIS - 1);
+        accept(log, 1, 11, 7, NOW);
+        log.close();
+
+        Map<Long, String> replayed = replay(new DecisionLog(directory, SEGMENT_BYTES, RETENTION_MILLIS),
+                NOW - RETENTION_MILLIS);
+
+        assertEquals(Arrays.asList(Filter.bookingKey(1, 11)), Arrays.asList(replayed.keySet().toArray()));
+    }
+
+    @Test
+    public void replayStopsAtATornRecord() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        DecisionLog log = new DecisionLog(directory, SEGMENT_BYTES, RETENTION_MILLIS);
+        accept(log, 1, 10, 7, NOW);
+        accept(log, 2, 20, 7, NOW);
+        log.close();
+        Path segment = directory.resolve(lastSegment(directory));
+        byte[] records = Files.readAllBytes(segment);
+        records[records.length - 1] ^= 1; // The checksum of the second record no longer matches
+        Files.write(segment, records);
+        Files.write(segment, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        Map<Long, String> replayed = replay(new DecisionLog(directory, SEGMENT_BYTES, RETENTION_MILLIS), 0);
+
+        assertEquals(Arrays.asList(Filter.bookingKey(1, 10)), Arrays.asList(replayed.keySet().toArray()));
+    }
+
+    @Test
+    public void replaysAcrossSegments() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        DecisionLog log = new DecisionLog(directory, 27 * 3, RETENTION_MILLIS); // Three decisions per segment
+        for (int requestid = 0; requestid < 10; requestid++) {
+            accept(log, 1, requestid, 7, NOW);
+            log.awaitSynced();
+        }
+        log.close();
+
+        assertTrue(directory.toFile().list().length > 3);
+        assertEquals(10, replay(new DecisionLog(directory, SEGMENT_BYTES, RETENTION_MILLIS), 0).size());
+    }
+
+    @Test
+    public void compactionKeepsOnlyTheLedger() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        DecisionLog log = new DecisionLog(directory, SEGMENT_BYTES, RETENTION_MILLIS);
+        accept(log, 1, 10, 7, NOW);
+        accept(log, 2, 20, 7, NOW);
+        ReservationLedger ledger = new ReservationLedger(RETENTION_MILLIS);
+        ledger.reserve(Filter.bookingKey(2, 20), 7, BookingTime.parse(TIME), NOW);
+        log.compact(ledger);
+        accept(log, 3, 30, 8, NOW + 1); // After the compaction, so it is kept too
+        log.close();
+
+        Map<Long, String> replayed = replay(new DecisionLog(directory, SEGMENT_BYTES, RETENTION_MILLIS), 0);
+
+        Map<Long, String> expected = new TreeMap<>();
+        expected.put(Filter.bookingKey(2, 20), reservation(7, NOW));
+        expected.put(Filter.bookingKey(3, 30), reservation(8, NOW + 1));
+        assertEquals(expected, replayed);
+    }
+
+    @Test
+    public void awaitSyncedReturnsOnceTheDecisionIsOnDisk() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        DecisionLog log = new DecisionLog(directory, SEGMENT_BYTES, RETENTION_MILLIS);
+        accept(log, 1, 10, 7, NOW);
+
+        log.awaitSynced();
+
+        assertEquals(27, Files.size(directory.resolve(lastSegment(directory))));
+        log.close();
+    }
+
+    private static void accept(DecisionLog log, long userid, long requestid, long dentistid, long now) {
+        ReceivedBooking request = new ReceivedBooking(userid, requestid, dentistid, 1609459200000L, TIME);
+        log.append(request, request, now);
+    }
+
+    private static void reject(DecisionLog log, long userid, long requestid, long dentistid, long now) {
+        ReceivedBooking request = new ReceivedBooking(userid, requestid, dentistid, 1609459200000L, TIME);
+        log.append(request, new ReceivedBooking(userid, requestid, "none"), now);
+    }
+
+    /**
+     * @return the replayed reservations by booking key, closing the log afterwards
+     */
+    private static Map<Long, String> replay(DecisionLog log, long since) throws Exception {
+        Map<Long, String> replayed = new TreeMap<>();
+        log.replay((bookingKey, dentistid, epochMinute, reservedAt) -> {
+            assertEquals(BookingTime.parse(TIME), epochMinute);
+            replayed.put(bookingKey, reservation(dentistid, reservedAt));
+        }, since);
+        log.close();
+        return replayed;
+    }
+
+    private static String reservation(long dentistid, long reservedAt) {
+        return dentistid + "@" + reservedAt;
+    }
+
+    private static String lastSegment(Path directory) {
+        String[] segments = directory.toFile().list();
+        Arrays.sort(segments);
+        return segments[segments.length - 1];
+    }
+}
@@ -0,0 +1,87 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+
+public class FilterTest {
+    private static final long SEGMENT_BYTES = 1024 * 1024;
+    private static final long ISSUANCE = 1609459200000L;
+    private static final String TIME = "2021-01-04 10:00";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void lastChairGoesToTheFirstRequest() {
+        Filter filter = filter(registries());
+
+        assertEquals(TIME, filter.checkAvailability(request(1, 10)).getTime());
+        assertEquals("none", filter.checkAvailability(request(2, 20)).getTime());
+    }
+
+    @Test
+    public void repeatedRequestGetsTheSameDecision() {
+        Filter filter = filter(registries());
+        filter.checkAvailability(request(1, 10));
+        filter.checkAvailability(request(2, 20));
+
+        assertEquals(TIME, filter.checkAvailability(request(1, 10)).getTime());
+        assertEquals("none", filter.checkAvailability(request(2, 20)).getTime());
+        assertEquals(2, filter.getDecisionCache().getHits());
+    }
+
+    @Test
+    public void redeliveredRequestIsAcceptedAgainAfterARestart() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        Filter beforeCrash = filter(registries());
+        DecisionLog log = new DecisionLog(directory, SEGMENT_BYTES, Filter.RESERVATION_TTL_MILLIS);
+        beforeCrash.setDecisionLog(log);
+        beforeCrash.checkAvailability(request(1, 10));
+        beforeCrash.awaitDecisionsLogged();
+        log.close();
+
+        Filter afterCrash = filter(registries());
+        afterCrash.setDecisionLog(new DecisionLog(directory, SEGMENT_BYTES, Filter.RESERVATION_TTL_MILLIS));
+
+        // Its own reservation takes the only chair, the request must not be rejected because of it
+        assertEquals(TIME, afterCrash.checkAvailability(request(1, 10)).getTime());
+        assertEquals("none", afterCrash.checkAvailability(request(2, 20)).getTime());
+    }
+
+    @Test
+    public void requestInTheBookingRegistryIsAcceptedAgain() {
+        ConcurrentHashMap<Long, Booking> bookings = new ConcurrentHashMap<>();
+        Booking booking = new Booking(1, 10, 7, ISSUANCE, TIME);
+        bookings.put(Filter.bookingKey(1, 10), booking);
+        OccupancyIndex occupancy = new OccupancyIndex();
+        occupancy.add(booking);
+        Filter filter = filter(registries().withBookings(bookings, occupancy));
+
+        assertEquals(TIME, filter.checkAvailability(request(1, 10)).getTime());
+        assertEquals("none", filter.checkAvailability(request(2, 20)).getTime());
+    }
+
+    /**
+     * @return registries with a single dental office, 7, that has one chair
+     */
+    private static RegistrySnapshot registries() {
+        Dentist dentist = new Dentist(7, "Dental Office", "Owner", 1, "Street 1", "Gothenburg", 57.7, 11.97,
+                "9:00-17:00", "9:00-17:00", "9:00-17:00", "9:00-17:00", "9:00-17:00");
+        return RegistrySnapshot.empty().withDentists(Collections.singletonList(dentist));
+    }
+
+    private static Filter filter(RegistrySnapshot registries) {
+        Filter filter = new Filter();
+        filter.restoreRegistries(registries);
+        return filter;
+    }
+
+    private static ReceivedBooking request(long userid, long requestid) {
+        return new ReceivedBooking(userid, requestid, 7, ISSUANCE, TIME);
+    }
+}
@@ -0,0 +1,175 @@
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FreeSlotsCodecTest {
+    private static final LocalDate MONDAY = LocalDate.of(2021, 1, 4);
+    private static final LocalDate SATURDAY = LocalDate.of(2021, 1, 9);
+    private static final int HEADER_BYTES = 7;
+    private static final int SCHEDULE_BYTES = 10;
+
+    @Test
+    public void emptyListRoundTrips() {
+        byte[] payload = FreeSlotsCodec.encode(Collections.<Schedule>emptyList());
+
+        assertEquals(HEADER_BYTES, payload.length);
+        assertTrue(FreeSlotsCodec.decode(payload).isEmpty());
+    }
+
+    @Test
+    public void weekendScheduleRoundTripsWithoutSlots() {
+        Schedule weekend = new Schedule(dentist(12, 2), SATURDAY);
+
+        List<FreeSlotsCodec.DecodedSchedule> decoded = roundTrip(weekend);
+
+        assertEquals(1, decoded.size());
+        assertEquals(12, decoded.get(0).getDentistid());
+        assertEquals(SATURDAY, decoded.get(0).getDate());
+        assertEquals(0, decoded.get(0).getSlotGrid().getSlotCount());
+    }
+
+    @Test
+    public void workdayScheduleRoundTrips() {
+        Schedule workday = new Schedule(dentist(7, 3), MONDAY);
+        workday.getSlotGrid().book(3, 2);
+        workday.getSlotGrid().book(5, 3);
+
+        List<FreeSlotsCodec.DecodedSchedule> decoded = roundTrip(workday);
+
+        assertEquals(1, decoded.size());
+        assertEquals(7, decoded.get(0).getDentistid());
+        assertEquals(MONDAY, decoded.get(0).getDate());
+        assertSameGrid(workday.getSlotGrid(), decoded.get(0).getSlotGrid());
+    }
+
+    @Test
+    public void fullSlotMaskRoundTrips() {
+        // 17 slots, so the bitmap has a full byte, another full byte and one bit in a third
+        byte[] freeChairs = new byte[17];
+        Arrays.fill(freeChairs, (byte) 99);
+        SlotGrid full = new SlotGrid(7 * 60, 30, freeChairs);
+
+        byte[] payload = FreeSlotsCodec.encode(Collections.singletonList(schedule(dentist(9999, 99), MONDAY, full)));
+        List<FreeSlotsCodec.DecodedSchedule> decoded = FreeSlotsCodec.decode(payload);
+
+        assertEquals(HEADER_BYTES + SCHEDULE_BYTES + 3 + 17, payload.length);
+        assertEquals(9999, decoded.get(0).getDentistid());
+        assertSameGrid(full, decoded.get(0).getSlotGrid());
+        assertEquals((1L << 17) - 1, decoded.get(0).getSlotGrid().getFreeSlotMask());
+    }
+
+    @Test
+    public void emptySlotMaskRoundTrips() {
+        SlotGrid booked = new SlotGrid(8 * 60, 16 * 60, 30, 2);
+        for (int slot = 0; slot < booked.getSlotCount(); slot++) {
+            booked.book(slot, 2);
+        }
+
+        byte[] payload = FreeSlotsCodec.encode(Collections.singletonList(schedule(dentist(3, 2), MONDAY, booked)));
+        List<FreeSlotsCodec.DecodedSchedule> decoded = FreeSlotsCodec.decode(payload);
+
+        assertEquals(HEADER_BYTES + SCHEDULE_BYTES + 2, payload.length); // Only the bitmap, no chair counts
+        assertSameGrid(booked, decoded.get(0).getSlotGrid());
+        assertEquals(0, decoded.get(0).getSlotGrid().getFreeSlotMask());
+    }
+
+    @Test
+    public void schedulesKeepTheirOrder() {
+        List<Schedule> schedules = Arrays.asList(new Schedule(dentist(2, 1), MONDAY),
+                new Schedule(dentist(1, 4), MONDAY.plusDays(1)), new Schedule(dentist(2, 1), SATURDAY));
+
+        List<FreeSlotsCodec.DecodedSchedule> decoded = FreeSlotsCodec.decode(FreeSlotsCodec.encode(schedules));
+
+        assertEquals(schedules.size(), decoded.size());
+        for (int i = 0; i < schedules.size(); i++) {
+            assertEquals(schedules.get(i).getDentist().getId(), decoded.get(i).getDentistid());
+            assertEquals(schedules.get(i).getSelectedDate(), decoded.get(i).getDate());
+            assertSameGrid(schedules.get(i).getSlotGrid(), decoded.get(i).getSlotGrid());
+        }
+    }
+
+    @Test
+    public void badMagicIsRejected() {
+        byte[] payload = FreeSlotsCodec.encode(Collections.<Schedule>emptyList());
+        payload[1] = 'X';
+
+        assertRejected(payload, "not a binary free-slots payload");
+    }
+
+    @Test
+    public void jsonPayloadIsRejected() {
+        assertRejected(JsonWriter.forThread().busy("QUEUE_FULL", MONDAY, MONDAY), "not a binary free-slots payload");
+    }
+
+    @Test
+    public void truncatedHeaderIsRejected() {
+        assertRejected(new byte[]{'F', 'S', 1}, "not a binary free-slots payload");
+    }
+
+    @Test
+    public void truncatedBodyIsRejected() {
+        Schedule workday = new Schedule(dentist(7, 3), MONDAY);
+        byte[] payload = FreeSlotsCodec.encode(Arrays.asList(workday, workday));
+
+        // Cut inside the fixed part, the bitmap and the chair counts of the second schedule
+        int second = (payload.length - HEADER_BYTES) / 2 + HEADER_BYTES;
+        for (int length : new int[]{HEADER_BYTES, second - 1, second + 4, second + SCHEDULE_BYTES + 1,
+                payload.length - 1}) {
+            assertRejected(Arrays.copyOf(payload, length), "truncated");
+        }
+    }
+
+    @Test
+    public void unknownVersionIsRejected() {
+        byte[] payload = FreeSlotsCodec.encode(Collections.<Schedule>emptyList());
+        payload[2] = 2;
+
+        assertRejected(payload, "Unsupported free-slots encoding version: 2");
+    }
+
+    private static List<FreeSlotsCodec.DecodedSchedule> roundTrip(Schedule schedule) {
+        return FreeSlotsCodec.decode(FreeSlotsCodec.encode(Collections.singletonList(schedule)));
+    }
+
+    private static void assertSameGrid(SlotGrid expected, SlotGrid actual) {
+        assertEquals(expected.getOpeningMinute(), actual.getOpeningMinute());
+        assertEquals(expected.getSlotDuration(), actual.getSlotDuration());
+        assertEquals(expected.getSlotCount(), actual.getSlotCount());
+        for (int slot = 0; slot < expected.getSlotCount(); slot++) {
+            assertEquals("free chairs of slot " + slot, expected.getFreeChairs(slot), actual.getFreeChairs(slot));
+        }
+    }
+
+    private static void assertRejected(byte[] payload, String message) {
+        try {
+            FreeSlotsCodec.decode(payload);
+            fail("Decoded an invalid payload");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    private static Dentist dentist(long id, long dentists) {
+        return new Dentist(id, "Dental Office " + id, "Owner", dentists, "Street 1", "Gothenburg", 57.7, 11.97,
+                "9:00-17:00", "9:00-17:00", "9:00-17:00", "9:00-17:00", "9:00-15:00");
+    }
+
+    /**
+     * @return a schedule whose slot grid is the given one instead of the one built from the opening hours
+     */
+    private static Schedule schedule(Dentist dentist, LocalDate date, SlotGrid slotGrid) {
+        return new Schedule(dentist, date) {
+            @Override
+            public SlotGrid getSlotGrid() {
+                return slotGrid;
+            }
+        };
+    }
+}
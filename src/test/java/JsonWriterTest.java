@@ -0,0 +1,81 @@
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class JsonWriterTest {
+    private static final LocalDate MONDAY = LocalDate.of(2021, 1, 4);
+    private static final LocalDate SATURDAY = LocalDate.of(2021, 1, 9);
+
+    @Test
+    public void emptyFreeSlotsMatchToString() {
+        assertFreeSlots(Collections.<Schedule>emptyList());
+    }
+
+    @Test
+    public void weekendFreeSlotsMatchToString() {
+        assertFreeSlots(Collections.singletonList(new Schedule(dentist(12, 2), SATURDAY)));
+    }
+
+    @Test
+    public void multiChairFreeSlotsMatchToString() {
+        OccupancyIndex occupancy = new OccupancyIndex();
+        occupancy.add(7, BookingTime.of(MONDAY, 10 * 60));
+        occupancy.add(7, BookingTime.of(MONDAY, 15 * 60));
+        occupancy.add(7, BookingTime.of(MONDAY, 15 * 60));
+        occupancy.add(7, BookingTime.of(MONDAY, 15 * 60)); // Every chair of the slot
+        Schedule booked = new Schedule(dentist(7, 3), MONDAY);
+        booked.setUnavailableTimeSlots(occupancy);
+
+        assertFreeSlots(Arrays.asList(booked, new Schedule(dentist(9999, 1), MONDAY.plusDays(4)),
+                new Schedule(dentist(12, 2), SATURDAY)));
+    }
+
+    @Test
+    public void freeSlotsAfterALargePayloadMatchToString() {
+        List<Schedule> schedules = new ArrayList<>();
+        for (int day = 0; day < 2000; day++) {
+            schedules.add(new Schedule(dentist(1, 9), MONDAY.plusDays(day)));
+        }
+        assertFreeSlots(schedules); // Grows the buffer of the thread past the size it keeps
+
+        assertFreeSlots(Collections.singletonList(new Schedule(dentist(7, 3), MONDAY)));
+    }
+
+    @Test
+    public void successfulBookingMatchesToString() {
+        ReceivedBooking booking = new ReceivedBooking(12345, 99999, 9999, 1609459200000L, "2021-01-04 10:00");
+
+        assertArrayEquals(bytes(booking.toString()), JsonWriter.forThread().successfulBooking(booking));
+    }
+
+    @Test
+    public void bookingResponseMatchesGetBookingResponse() {
+        ReceivedBooking rejected = new ReceivedBooking(1, 2, "none");
+        ReceivedBooking accepted = new ReceivedBooking(1, 2, 3, 1609459200000L, "2021-01-04 10:00");
+
+        assertArrayEquals(bytes(rejected.getBookingResponse()), JsonWriter.forThread().bookingResponse(rejected));
+        assertArrayEquals(bytes(accepted.getBookingResponse()), JsonWriter.forThread().bookingResponse(accepted));
+    }
+
+    private static void assertFreeSlots(List<Schedule> schedules) {
+        byte[] expected = bytes("{ \"schedules\": " + schedules.toString() + "}");
+
+        assertArrayEquals(expected, JsonWriter.forThread().freeSlots(schedules));
+    }
+
+    private static byte[] bytes(String payload) {
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Dentist dentist(long id, long dentists) {
+        return new Dentist(id, "Dental Office " + id, "Owner", dentists, "Street 1", "Gothenburg", 57.7, 11.97,
+                "9:00-17:00", "8:00-16:30", "9:00-17:00", "10:00-18:00", "9:00-15:00");
+    }
+}
@@ -0,0 +1,68 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class OccupancyIndexTest {
+    private static final long TEN_AM = BookingTime.parse("2021-01-04 10:00");
+    private static final long HALF_PAST_TEN = BookingTime.parse("2021-01-04 10:30");
+
+    @Test
+    public void countsBookingsPerOfficeAndTime() {
+        OccupancyIndex occupancy = new OccupancyIndex(Arrays.asList(
+                booking(1, 7, "2021-01-04 10:00"),
+                booking(2, 7, "2021-01-04 10:00"),
+                booking(3, 7, "2021-01-04 10:30"),
+                booking(4, 8, "2021-01-04 10:00")));
+
+        assertEquals(2, occupancy.countBookings(7, TEN_AM));
+        assertEquals(1, occupancy.countBookings(7, HALF_PAST_TEN));
+        assertEquals(1, occupancy.countBookings(8, TEN_AM));
+        assertEquals(0, occupancy.countBookings(8, HALF_PAST_TEN));
+        assertEquals(0, occupancy.countBookings(9, TEN_AM));
+        assertEquals(4, occupancy.size());
+    }
+
+    @Test
+    public void neighbouringKeysDoNotCollide() {
+        OccupancyIndex occupancy = new OccupancyIndex();
+        occupancy.add(9999, TEN_AM);
+        occupancy.add(0, TEN_AM + 1);
+
+        assertEquals(1, occupancy.countBookings(9999, TEN_AM));
+        assertEquals(0, occupancy.countBookings(0, TEN_AM));
+        assertEquals(1, occupancy.countBookings(0, TEN_AM + 1));
+        assertEquals(0, occupancy.countBookings(9999, TEN_AM + 1));
+    }
+
+    @Test
+    public void removingFreesOneChair() {
+        OccupancyIndex occupancy = new OccupancyIndex();
+        Booking first = booking(1, 7, "2021-01-04 10:00");
+        occupancy.add(first);
+        occupancy.add(booking(2, 7, "2021-01-04 10:00"));
+
+        occupancy.remove(first);
+        assertEquals(1, occupancy.countBookings(7, TEN_AM));
+        occupancy.remove(7, TEN_AM);
+        assertEquals(0, occupancy.countBookings(7, TEN_AM));
+        assertEquals(0, occupancy.size());
+    }
+
+    @Test
+    public void removingAFreeChairChangesNothing() {
+        OccupancyIndex occupancy = new OccupancyIndex();
+        occupancy.add(7, TEN_AM);
+
+        occupancy.remove(7, HALF_PAST_TEN);
+        occupancy.remove(8, TEN_AM);
+
+        assertEquals(1, occupancy.countBookings(7, TEN_AM));
+        assertEquals(1, occupancy.size());
+    }
+
+    private static Booking booking(long requestid, long dentistid, String time) {
+        return new Booking(1, requestid, dentistid, 1609459200000L, time);
+    }
+}
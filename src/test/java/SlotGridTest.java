@@ -0,0 +1,90 @@
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class SlotGridTest {
+    private static final int NINE = 9 * 60;
+    private static final int FIVE_PM = 17 * 60;
+
+    @Test
+    public void gridCoversTheOpeningHours() {
+        SlotGrid grid = new SlotGrid(NINE, FIVE_PM, 30, 3);
+
+        assertEquals(16, grid.getSlotCount());
+        assertEquals(NINE, grid.getStartMinute(0));
+        assertEquals(16 * 60 + 30, grid.getStartMinute(15));
+        assertEquals(16 * 3, grid.countFreeChairs());
+        assertEquals((1L << 16) - 1, grid.getFreeSlotMask());
+    }
+
+    @Test
+    public void closedOfficeHasNoSlots() {
+        SlotGrid grid = new SlotGrid(0, 0, 30, 0);
+
+        assertEquals(0, grid.getSlotCount());
+        assertEquals(0, grid.getFreeSlotMask());
+        assertEquals(-1, grid.slotAt(NINE));
+    }
+
+    @Test
+    public void slotAtOnlyFindsSlotStarts() {
+        SlotGrid grid = new SlotGrid(NINE, FIVE_PM, 30, 1);
+
+        assertEquals(0, grid.slotAt(NINE));
+        assertEquals(3, grid.slotAt(10 * 60 + 30));
+        assertEquals(-1, grid.slotAt(NINE + 15));
+        assertEquals(-1, grid.slotAt(NINE - 30));
+        assertEquals(-1, grid.slotAt(FIVE_PM));
+    }
+
+    @Test
+    public void bookingTakesChairsUntilNoneAreLeft() {
+        SlotGrid grid = new SlotGrid(NINE, FIVE_PM, 30, 2);
+
+        grid.book(4, 1);
+        assertEquals(1, grid.getFreeChairs(4));
+        grid.book(4, 5); // More bookings than chairs
+        assertEquals(0, grid.getFreeChairs(4));
+        grid.close(6);
+
+        assertEquals(0, grid.getFreeChairs(6));
+        assertEquals(14 * 2, grid.countFreeChairs());
+        assertEquals(((1L << 16) - 1) & ~(1L << 4) & ~(1L << 6), grid.getFreeSlotMask());
+    }
+
+    @Test
+    public void decodedGridKeepsItsOwnCopy() {
+        byte[] freeChairs = {2, 0, 1};
+        SlotGrid grid = new SlotGrid(NINE, 30, freeChairs);
+        Arrays.fill(freeChairs, (byte) 9);
+
+        assertEquals(3, grid.countFreeChairs());
+        assertEquals(0b101, grid.getFreeSlotMask());
+    }
+
+    @Test
+    public void scheduleClosesBreaksAndBookedSlots() {
+        Dentist dentist = new Dentist(5, "Dental Office", "Owner", 2, "Street 1", "Gothenburg", 57.7, 11.97,
+                "9:00-17:00", "9:00-17:00", "9:00-17:00", "9:00-17:00", "9:00-17:00");
+        LocalDate monday = LocalDate.of(2021, 1, 4);
+        OccupancyIndex occupancy = new OccupancyIndex();
+        occupancy.add(5, BookingTime.of(monday, 10 * 60));
+        occupancy.add(5, BookingTime.of(monday, 15 * 60));
+        occupancy.add(5, BookingTime.of(monday, 15 * 60));
+        occupancy.add(6, BookingTime.of(monday, 11 * 60)); // Another office
+
+        Schedule schedule = new Schedule(dentist, monday);
+        schedule.setUnavailableTimeSlots(occupancy);
+        SlotGrid grid = schedule.getSlotGrid();
+
+        assertEquals(0, grid.getFreeChairs(0)); // Fika
+        assertEquals(0, grid.getFreeChairs(grid.slotAt(13 * 60))); // Lunch
+        assertEquals(0, grid.getFreeChairs(grid.slotAt(13 * 60 + 30)));
+        assertEquals(1, grid.getFreeChairs(grid.slotAt(10 * 60)));
+        assertEquals(0, grid.getFreeChairs(grid.slotAt(15 * 60)));
+        assertEquals(2, grid.getFreeChairs(grid.slotAt(11 * 60)));
+    }
+}